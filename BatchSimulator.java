@@ -0,0 +1,242 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The class <b>BatchSimulator</b> plays large batches of seeded games without
+ * any display, to study the statistics of the boards: how often the first
+ * click opens a region, and how large the openings are.
+ *
+ * Games are split over a <b>ForkJoinPool</b>. Each worker thread reuses its
+ * own <b>GameEngine</b>, and each task returns its own <b>Statistics</b>,
+ * merged once the task is done: no mutable state is shared between threads.
+ * Game number g of a batch always uses the same board, whatever the number
+ * of threads.
+ */
+
+public class BatchSimulator {
+
+    private static final int GAMES_PER_TASK = 256;
+
+    private final int width;
+    private final int heigth;
+    private final int numberOfMines;
+    private final long seed;
+    private final ThreadLocal<GameEngine> engines;
+
+    /**
+     * The class <b>Statistics</b> accumulates the results of a set of games
+     */
+    public static class Statistics {
+
+        private long games;
+        private long openings;
+        private long uncovered;
+        private long wins;
+        private final long[] openingSizes = new long[33];
+
+        /**
+         * Records the result of the first click of a game
+         *
+         * @param size
+         *            the number of dots uncovered by the first click
+         * @param blank
+         *            true if the first clicked dot has no neighbooring mine
+         * @param won
+         *            true if the first click won the game
+         */
+        void record(int size, boolean blank, boolean won) {
+            games++;
+            uncovered += size;
+            if (blank) {
+                openings++;
+            }
+            if (won) {
+                wins++;
+            }
+            openingSizes[32 - Integer.numberOfLeadingZeros(size)]++;
+        }
+
+        /**
+         * Adds the results of other games to these statistics
+         *
+         * @param other
+         *            the statistics to add
+         * @return these statistics
+         */
+        Statistics merge(Statistics other) {
+            games += other.games;
+            openings += other.openings;
+            uncovered += other.uncovered;
+            wins += other.wins;
+            for (int k = 0; k < openingSizes.length; k++) {
+                openingSizes[k] += other.openingSizes[k];
+            }
+            return this;
+        }
+
+        public long getGames() {
+            return games;
+        }
+
+        /**
+         * Returns the share of first clicks that opened a region (selected
+         * a dot with no neighbooring mine)
+         *
+         * @return a value between 0 and 1
+         */
+        public double getOpeningRate() {
+            return games == 0 ? 0 : (double) openings / games;
+        }
+
+        /**
+         * Returns the mean number of dots uncovered by the first click
+         *
+         * @return the mean opening size
+         */
+        public double getMeanOpening() {
+            return games == 0 ? 0 : (double) uncovered / games;
+        }
+
+        /**
+         * Returns the number of games whose first click uncovered between
+         * 2^(k-1) and 2^k - 1 dots (bucket 1 holds the single dot openings)
+         *
+         * @param k
+         *            the bucket, between 0 and 32
+         * @return the number of games in that bucket
+         */
+        public long getOpeningHistogram(int k) {
+            return openingSizes[k];
+        }
+
+        public long getWins() {
+            return wins;
+        }
+    }
+
+    /**
+     * Constructor used for initializing a simulator of a given board
+     *
+     * @param width
+     *            the width of the boards
+     * @param heigth
+     *            the heigth of the boards
+     * @param numberOfMines
+     *            the number of mines of the boards
+     * @param seed
+     *            the seed of the batch
+     */
+    public BatchSimulator(int width, int heigth, int numberOfMines, long seed) {
+        this.width = width;
+        this.heigth = heigth;
+        this.numberOfMines = numberOfMines;
+        this.seed = seed;
+        this.engines = ThreadLocal.withInitial(
+                () -> new GameEngine(new GameModel(width, heigth, numberOfMines, seed)));
+    }
+
+    /**
+     * Plays games number 0 to games - 1 of the batch
+     *
+     * @param games
+     *            the number of games
+     * @param pool
+     *            the pool running the games
+     * @return the statistics of the games
+     */
+    public Statistics run(long games, ForkJoinPool pool) {
+        return pool.invoke(new Batch(0, games));
+    }
+
+    private Statistics play(long from, long to) {
+        GameEngine engine = engines.get();
+        Statistics statistics = new Statistics();
+        for (long g = from; g < to; g++) {
+            SplittableRandom random = new SplittableRandom(seed + g);
+            engine.reset(random.nextLong());
+            int row = random.nextInt(heigth);
+            int column = random.nextInt(width);
+            GameEngine.Outcome outcome = engine.reveal(row, column);
+            statistics.record(engine.getLastUncovered(), engine.getModel().isBlank(row, column),
+                    outcome == GameEngine.Outcome.WON);
+        }
+        return statistics;
+    }
+
+    private class Batch extends RecursiveTask<Statistics> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long from;
+        private final long to;
+
+        Batch(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Statistics compute() {
+            if (to - from <= GAMES_PER_TASK) {
+                return play(from, to);
+            }
+            long middle = (from + to) >>> 1;
+            Batch left = new Batch(from, middle);
+            left.fork();
+            Statistics right = new Batch(middle, to).compute();
+            return right.merge(left.join());
+        }
+    }
+
+    /**
+     * Runs a batch from the command line and prints its report.
+     * Parameters: games width heigth mines [seed [threads]]. When mines is
+     * <code>sweep</code>, densities from 1% to 40% are run in turn.
+     *
+     * @param args
+     *            command line parameters
+     */
+    public static void main(String[] args) {
+        if (args.length < 4) {
+            System.out.println("Usage: --simulate games width heigth mines|sweep [seed [threads]]");
+            return;
+        }
+        long games = Long.parseLong(args[0]);
+        int width = Integer.parseInt(args[1]);
+        int heigth = Integer.parseInt(args[2]);
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : 0L;
+        int threads = args.length > 5 ? Integer.parseInt(args[5]) : Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+
+        if (args[3].equals("sweep")) {
+            System.out.println("density  mines  opening rate  mean opening  games/s");
+            for (int percent = 1; percent <= 40; percent++) {
+                int mines = Math.max(1, width * heigth * percent / 100);
+                long start = System.nanoTime();
+                Statistics statistics = new BatchSimulator(width, heigth, mines, seed).run(games, pool);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.printf("%6d%%  %5d  %12.4f  %12.2f  %7.0f%n", percent, mines,
+                        statistics.getOpeningRate(), statistics.getMeanOpening(), games / seconds);
+            }
+        } else {
+            int mines = Math.min(Integer.parseInt(args[3]), width * heigth - 1);
+            long start = System.nanoTime();
+            Statistics statistics = new BatchSimulator(width, heigth, mines, seed).run(games, pool);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%d games of %dx%d with %d mines on %d threads in %.3f s (%.0f games/s)%n",
+                    statistics.getGames(), width, heigth, mines, threads, seconds, games / seconds);
+            System.out.printf("first click opening rate: %.4f, mean opening: %.2f dots, won at first click: %d%n",
+                    statistics.getOpeningRate(), statistics.getMeanOpening(), statistics.getWins());
+            System.out.println("opening size histogram:");
+            for (int k = 1; k < 33; k++) {
+                long count = statistics.getOpeningHistogram(k);
+                if (count > 0) {
+                    long low = 1L << (k - 1);
+                    System.out.printf("  [%d, %d): %d%n", low, 2 * low, count);
+                }
+            }
+        }
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,214 @@
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+
+/**
+ * The class <b>Benchmarks</b> measures the hot paths of the game on boards
+ * from beginner (9x9) to 5000x5000, at several densities, with fixed seeds:
+ * mine placement, zone clearing, win detection and rendering.
+ *
+ * Every benchmark prepares its state outside of the measured section, then
+ * runs the measured operation for a fixed time after a warm up. It reports
+ * the mean time per operation, the throughput, and the bytes allocated per
+ * operation by the measuring thread, so two builds can be compared.
+ */
+
+public class Benchmarks {
+
+    private static final long WARMUP_NANOS = 1000000000L;
+    private static final long MEASURE_NANOS = 2000000000L;
+    private static final long SEED = 20240501L;
+
+    private static final int[][] SIZES = {
+        {9, 9}, {30, 16}, {1000, 1000}, {5000, 5000}
+    };
+    private static final double[] DENSITIES = {0.05, 0.15, 0.2};
+
+    /**
+     * Results of operations are written here, so that they cannot be 
+     * optimized away, nor hoisted out of the measuring loop
+     */
+    private static volatile boolean sink;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * A measured operation, and the preparation of its state
+     */
+    private abstract static class Benchmark {
+
+        final String name;
+        final int operationsPerCall;
+
+        Benchmark(String name, int operationsPerCall) {
+            this.name = name;
+            this.operationsPerCall = operationsPerCall;
+        }
+
+        /**
+         * Prepares the state of the next measured call, not measured
+         */
+        abstract void setUp(long iteration);
+
+        /**
+         * The measured call, made of operationsPerCall operations
+         */
+        abstract void run();
+    }
+
+    private static void measure(Benchmark benchmark, String board) {
+        long iteration = 0;
+        long end = System.nanoTime() + WARMUP_NANOS;
+        while (System.nanoTime() < end) {
+            benchmark.setUp(iteration++);
+            benchmark.run();
+        }
+
+        long operations = 0;
+        long nanos = 0;
+        long bytes = 0;
+        end = System.nanoTime() + MEASURE_NANOS;
+        while (System.nanoTime() < end || operations == 0) {
+            benchmark.setUp(iteration++);
+            long allocated = THREADS.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            benchmark.run();
+            nanos += System.nanoTime() - start;
+            bytes += THREADS.getCurrentThreadAllocatedBytes() - allocated;
+            operations += benchmark.operationsPerCall;
+        }
+        System.out.printf("%-12s %-22s %14.2f %14.1f %12.1f%n", benchmark.name, board,
+                (double) nanos / operations, operations * 1e9 / nanos, (double) bytes / operations);
+    }
+
+    private static Benchmark addMines(GameModel gameModel) {
+        MinePlacer minePlacer = new MinePlacer();
+        int[] excluded = {0};
+        return new Benchmark("addMines", 1) {
+            void setUp(long iteration) {
+                gameModel.reset(SEED + iteration);
+            }
+
+            void run() {
+                minePlacer.placeMines(gameModel, gameModel.getSeed(), excluded);
+            }
+        };
+    }
+
+    private static Benchmark clearZone(GameModel gameModel) {
+        MinePlacer minePlacer = new MinePlacer();
+        FloodFill floodFill = new FloodFill(gameModel);
+        int[] excluded = {0};
+        return new Benchmark("clearZone", 1) {
+            int row;
+            int column;
+
+            void setUp(long iteration) {
+                // a new board every time, still covered, selected at the
+                // first blank dot from a position that moves with the
+                // iteration (or the first safe dot if there is no blank
+                // dot), so every measured call opens a whole zone
+                gameModel.reset(SEED + iteration);
+                minePlacer.placeMines(gameModel, gameModel.getSeed(), excluded);
+                int size = gameModel.getWidth() * gameModel.getHeigth();
+                int start = (int) ((iteration * 7919) % size);
+                int safe = -1;
+                int blank = -1;
+                for (int k = 0; k < size && blank < 0; k++) {
+                    int index = (start + k) % size;
+                    int value = gameModel.cell(index);
+                    if ((value & CellStore.MINED) == 0) {
+                        safe = safe < 0 ? index : safe;
+                        blank = (value & CellStore.COUNT_MASK) == 0 ? index : -1;
+                    }
+                }
+                int index = blank >= 0 ? blank : safe;
+                row = index / gameModel.getWidth();
+                column = index % gameModel.getWidth();
+                gameModel.uncover(row, column);
+            }
+
+            void run() {
+                sink = floodFill.clearZone(row, column) > 0;
+            }
+        };
+    }
+
+    private static Benchmark isFinished(GameModel gameModel) {
+        GameEngine gameEngine = new GameEngine(gameModel);
+        gameEngine.reset(SEED);
+        gameEngine.reveal(0, 0);
+        return new Benchmark("isFinished", 1000) {
+            void setUp(long iteration) {
+            }
+
+            void run() {
+                for (int k = 0; k < 1000; k++) {
+                    sink = gameModel.isFinished();
+                }
+            }
+        };
+    }
+
+    private static Benchmark render(GameModel gameModel) {
+        GameEngine gameEngine = new GameEngine(gameModel);
+        gameEngine.reset(SEED);
+        gameEngine.reveal(gameModel.getHeigth() / 2, gameModel.getWidth() / 2);
+        BoardPanel boardPanel = new BoardPanel(gameModel, null);
+        boardPanel.setSize(boardPanel.getPreferredSize());
+        int width = Math.min(boardPanel.getWidth(), 800);
+        int heigth = Math.min(boardPanel.getHeight(), 800);
+        BufferedImage image = new BufferedImage(width, heigth, BufferedImage.TYPE_INT_ARGB);
+        return new Benchmark("render", 1) {
+            void setUp(long iteration) {
+            }
+
+            void run() {
+                Graphics2D g = image.createGraphics();
+                g.setClip(0, 0, width, heigth);
+                boardPanel.paint(g);
+                g.dispose();
+            }
+        };
+    }
+
+    /**
+     * Runs all the benchmarks, or the ones whose name is given
+     *
+     * @param args
+     *            names of the benchmarks to run (addMines, clearZone,
+     *            isFinished, render), all of them if empty
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        System.out.printf("%-12s %-22s %14s %14s %12s%n", "benchmark", "board", "ns/op", "ops/s", "B/op");
+        for (int[] size : SIZES) {
+            for (double density : DENSITIES) {
+                int mines = Math.max(1, (int) (size[0] * size[1] * density));
+                String board = size[0] + "x" + size[1] + " " + (int) (density * 100) + "%";
+                GameModel gameModel = new GameModel(size[0], size[1], mines, SEED);
+                Benchmark[] benchmarks = {
+                    addMines(gameModel), clearZone(gameModel), isFinished(gameModel), render(gameModel)
+                };
+                for (Benchmark benchmark : benchmarks) {
+                    if (selected(benchmark.name, args)) {
+                        measure(benchmark, board);
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean selected(String name, String[] args) {
+        if (args.length == 0) {
+            return true;
+        }
+        for (String arg : args) {
+            if (arg.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
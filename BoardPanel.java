@@ -0,0 +1,209 @@
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import javax.swing.*;
+
+/**
+ * The class <b>BoardPanel</b> draws the whole board of the game in a single
+ * component. Dots are painted straight from the state of the <b>GameModel</b>,
+ * using the icon atlas of <b>DotButton</b>, and only the dots inside the
+ * clip are painted, so the component is meant to sit in a <b>JScrollPane</b>.
+ * Mouse clicks are mapped to a (row, column) and passed to the controller.
+ */
+
+public class BoardPanel extends JComponent implements Scrollable {
+
+    private static final long serialVersionUID = 1L;
+
+    // the heatmap is painted with 64 shades of translucent red, from
+    // transparent (probability 0) to 80% opaque (probability 1)
+    private static final int HEAT_LEVELS = 64;
+    private static final Color[] HEAT = new Color[HEAT_LEVELS];
+    static {
+        for (int k = 0; k < HEAT_LEVELS; k++) {
+            HEAT[k] = new Color(1f, 0f, 0f, k * 0.8f / (HEAT_LEVELS - 1));
+        }
+    }
+
+    private GameModel gameModel;
+    private GameController gameController;
+    private int cellSize;
+    private double[] heatmap;
+
+    /**
+     * Constructor used for initializing the board
+     *
+     * @param gameModel
+     *            the model of the game (already initialized)
+     * @param gameController
+     *            the controller
+     */
+    public BoardPanel(GameModel gameModel, GameController gameController) {
+        this.gameModel = gameModel;
+        this.gameController = gameController;
+        this.cellSize = DotButton.getIconSize();
+        setOpaque(true);
+        addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseReleased(MouseEvent e) {
+                int row = e.getY() / cellSize;
+                int column = e.getX() / cellSize;
+                if (!contains(e.getPoint()) || row >= gameModel.getHeigth() || column >= gameModel.getWidth()) {
+                    return;
+                }
+                if (SwingUtilities.isLeftMouseButton(e)) {
+                    BoardPanel.this.gameController.select(row, column);
+                } else if (SwingUtilities.isRightMouseButton(e)) {
+                    BoardPanel.this.gameController.flag(row, column);
+                }
+            }
+        });
+    }
+
+    /**
+     * Schedules the repaint of the dots changed in the model since
+     * the last update, as a single rectangle enclosing all of them
+     */
+    public void update() {
+        if (gameModel.isAllDirty()) {
+            repaint();
+            return;
+        }
+        int count = gameModel.getDirtyCount();
+        if (count == 0) {
+            return;
+        }
+        int width = gameModel.getWidth();
+        int minRow = Integer.MAX_VALUE, maxRow = -1;
+        int minColumn = Integer.MAX_VALUE, maxColumn = -1;
+        for (int k = 0; k < count; k++) {
+            int index = gameModel.getDirty(k);
+            int i = index / width;
+            int j = index - i * width;
+            minRow = Math.min(minRow, i);
+            maxRow = Math.max(maxRow, i);
+            minColumn = Math.min(minColumn, j);
+            maxColumn = Math.max(maxColumn, j);
+        }
+        repaint(minColumn * cellSize, minRow * cellSize,
+                (maxColumn - minColumn + 1) * cellSize, (maxRow - minRow + 1) * cellSize);
+    }
+
+    /**
+     * Sets the probabilities painted over the covered dots, from
+     * transparent (safe) to opaque red (mined)
+     *
+     * @param heatmap
+     *            the grid computed by <b>ProbabilityEngine</b>, or null
+     *            to paint no heatmap
+     */
+    public void setHeatmap(double[] heatmap) {
+        this.heatmap = heatmap;
+        repaint();
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        long start = System.nanoTime();
+        Metrics.RenderEvent event = Metrics.beginRender();
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        g.setColor(getBackground());
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+        int firstRow = Math.max(clip.y / cellSize, 0);
+        int lastRow = Math.min((clip.y + clip.height - 1) / cellSize, gameModel.getHeigth() - 1);
+        int firstColumn = Math.max(clip.x / cellSize, 0);
+        int lastColumn = Math.min((clip.x + clip.width - 1) / cellSize, gameModel.getWidth() - 1);
+
+        for (int i = firstRow; i <= lastRow; i++) {
+            for (int j = firstColumn; j <= lastColumn; j++) {
+                DotButton.paintIcon(g, getIcon(i, j), j * cellSize, i * cellSize);
+            }
+        }
+        if (heatmap != null && heatmap.length == gameModel.getWidth() * gameModel.getHeigth()) {
+            for (int i = firstRow; i <= lastRow; i++) {
+                for (int j = firstColumn; j <= lastColumn; j++) {
+                    double probability = heatmap[gameModel.index(i, j)];
+                    if (probability > 0 && gameModel.isCovered(i, j)) {
+                        g.setColor(HEAT[(int) Math.round(Math.min(probability, 1) * (HEAT_LEVELS - 1))]);
+                        g.fillRect(j * cellSize, i * cellSize, cellSize, cellSize);
+                    }
+                }
+            }
+        }
+        int icons = Math.max(lastRow - firstRow + 1, 0) * Math.max(lastColumn - firstColumn + 1, 0);
+        Metrics.ICON_LOOKUPS.add(icons);
+        Metrics.RENDERS.record(System.nanoTime() - start);
+        if (event != null && event.shouldCommit()) {
+            event.moveIndex = gameModel.getNumberOfSteps();
+            event.boardSize = gameModel.getWidth() * gameModel.getHeigth();
+            event.icons = icons;
+            event.commit();
+        }
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        return new Dimension(gameModel.getWidth() * cellSize, gameModel.getHeigth() * cellSize);
+    }
+
+    public Dimension getPreferredScrollableViewportSize() {
+        Dimension board = getPreferredSize();
+        return new Dimension(Math.min(board.width, 800), Math.min(board.height, 800));
+    }
+
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return cellSize;
+    }
+
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        int visible = orientation == SwingConstants.VERTICAL ? visibleRect.height : visibleRect.width;
+        return Math.max(visible - cellSize, cellSize);
+    }
+
+    public boolean getScrollableTracksViewportWidth() {
+        return false;
+    }
+
+    public boolean getScrollableTracksViewportHeight() {
+        return false;
+    }
+
+    /**
+     * returns the icon value that must be used for a given dot 
+     * in the game
+     * 
+     * @param i
+     *            the x coordinate of the dot
+     * @param j
+     *            the y coordinate of the dot
+     * @return the icon to use for the dot at location (i,j)
+     */   
+    int getIcon(int i, int j){
+        return iconOf(gameModel.cell(gameModel.index(i, j)));
+    }
+
+    /**
+     * returns the icon value that must be used for a dot with a given
+     * packed state. The icon never tells whether a covered dot is mined.
+     * 
+     * @param value
+     *            the state of the dot, as stored in a <b>CellStore</b>
+     * @return the icon to use for the dot
+     */   
+    static int iconOf(int value){
+        if ((value & (CellStore.CLICKED | CellStore.MINED)) == (CellStore.CLICKED | CellStore.MINED)) {
+            return DotButton.CLICKED_MINE;
+        } else if ((value & (CellStore.UNCOVERED | CellStore.FLAGGED)) == CellStore.FLAGGED) {
+            return DotButton.FLAGGED;
+        } else if ((value & CellStore.UNCOVERED) == 0) {
+            return DotButton.COVERED;
+        } else if ((value & CellStore.MINED) != 0) {
+            return DotButton.MINED;
+        }
+        return value & CellStore.COUNT_MASK;
+    }
+}
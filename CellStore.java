@@ -0,0 +1,63 @@
+/**
+ * The interface <b>CellStore</b> is the storage backend of the board held by
+ * <b>GameModel</b>. Every dot of the board is packed in a single byte, stored
+ * at index <code>row * width + column</code>:
+ * - bits 0-3: the number of neighbooring mines (0 to 8)
+ * - bit 4: the dot is mined
+ * - bit 5: the dot has been uncovered
+ * - bit 6: the dot has been clicked
+ * - bit 7: the dot is flagged
+ *
+ * A freshly cleared store (all zeros) is therefore a covered, unmined board.
+ */
+
+public interface CellStore {
+
+    public static final int COUNT_MASK = 0x0F;
+    public static final int MINED      = 0x10;
+    public static final int UNCOVERED  = 0x20;
+    public static final int CLICKED    = 0x40;
+    public static final int FLAGGED    = 0x80;
+
+    /**
+     * Returns the number of cells of this store.
+     *
+     * @return the number of cells
+     */
+
+    public abstract int size();
+
+    /**
+     * Returns the packed state of the cell at the given index.
+     *
+     * @param index the index of the cell
+     * @return the packed state, as an int between 0 and 255
+     */
+
+    public abstract int get( int index );
+
+    /**
+     * Replaces the packed state of the cell at the given index.
+     *
+     * @param index the index of the cell
+     * @param value the new packed state
+     */
+
+    public abstract void set( int index, int value );
+
+    /**
+     * Resets every cell to zero (covered, not mined, no neighbooring mine).
+     */
+
+    public abstract void clear();
+
+    /**
+     * Creates a cleared store of the same size and kind as this one, for
+     * numbers kept beside the board (e.g. the flagged neighboors of each dot).
+     *
+     * @return the new store
+     */
+
+    public abstract CellStore companion();
+
+}
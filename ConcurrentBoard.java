@@ -0,0 +1,422 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The class <b>ConcurrentBoard</b> lets several threads (players, or
+ * solvers) play on the same <b>GameModel</b> at once. The board is split in
+ * tiles of 64 x 64 dots, each guarded by one of STRIPES locks. A thread only
+ * reads or writes a dot while it holds the lock of its tile:
+ * - a reveal, and the flood fill it starts, hold one lock at a time: the
+ * neighboors that fall in another tile are put aside, and opened once the
+ * current tile is released
+ * - a flag or a chord needs a whole 3 x 3 neighboorhood, which spans at most
+ * 4 tiles: their locks are taken in ascending order
+ * so no two threads can wait for each other. Moves in different areas of the
+ * board take different locks, and proceed in parallel.
+ *
+ * Whoever uncovers a blank dot opens its neighboors, so the dots uncovered
+ * are the same as if the moves had been played one after the other. Unlike
+ * <b>GameEngine</b>, hitting a mine only uncovers that mine: it is counted
+ * as an explosion, and the other players go on.
+ *
+ * The counters are <b>LongAdder</b>s, and are added to those of the model by
+ * <b>commit</b>. While the board is in use, the model must not be changed
+ * through any other path.
+ */
+
+public class ConcurrentBoard {
+
+    private static final int TILE_SHIFT = 6;
+    private static final int STRIPES = 1024;
+    private static final int CLOSED = CellStore.MINED | CellStore.UNCOVERED | CellStore.FLAGGED;
+
+    private final GameModel gameModel;
+    private final CellStore store;
+    private final int width;
+    private final int heigth;
+    private final int tilesPerRow;
+    private final int safeDots;
+    private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+
+    private final LongAdder steps = new LongAdder();
+    private final LongAdder uncovered = new LongAdder();
+    private final LongAdder uncoveredSafe = new LongAdder();
+    private final LongAdder flags = new LongAdder();
+    private final LongAdder explosions = new LongAdder();
+    private final long uncoveredSafeBefore;
+
+    private final ThreadLocal<Work> works = ThreadLocal.withInitial(Work::new);
+
+    /**
+     * The stacks of one thread: the blank dots to expand in the current
+     * tile, and the dots to open in other tiles
+     */
+    private static class Work {
+        int[] local = new int[256];
+        int localTop;
+        int[] pending = new int[256];
+        int pendingTop;
+        int[] stripes = new int[4];
+
+        void pushLocal(int index) {
+            if (localTop == local.length) {
+                local = Arrays.copyOf(local, localTop * 2);
+            }
+            local[localTop++] = index;
+        }
+
+        void pushPending(int index) {
+            if (pendingTop == pending.length) {
+                pending = Arrays.copyOf(pending, pendingTop * 2);
+            }
+            pending[pendingTop++] = index;
+        }
+    }
+
+    /**
+     * Constructor used for initializing a concurrent board on a model whose
+     * mines are already hidden
+     *
+     * @param gameModel
+     *            the model of the game
+     */
+    public ConcurrentBoard(GameModel gameModel) {
+        if (gameModel.getNumberOfMinesPlaced() == 0) {
+            throw new IllegalStateException("the mines must be hidden first");
+        }
+        this.gameModel = gameModel;
+        this.store = gameModel.getStore();
+        this.width = gameModel.getWidth();
+        this.heigth = gameModel.getHeigth();
+        this.tilesPerRow = (width + (1 << TILE_SHIFT) - 1) >>> TILE_SHIFT;
+        this.safeDots = width * heigth - gameModel.getNumberOfMinesPlaced();
+        this.uncoveredSafeBefore = gameModel.getNumberUncoveredSafe();
+        for (int k = 0; k < STRIPES; k++) {
+            locks[k] = new ReentrantLock();
+        }
+        gameModel.allocateFlagCounters();
+    }
+
+    /**
+     * Selects a dot: uncovers it, and the zone around it
+     *
+     * @param row
+     *            the selected line
+     * @param column
+     *            the selected column
+     * @return the outcome of the move: IGNORED, SAFE, MINE (an explosion)
+     *         or WON (the last safe dot was uncovered)
+     */
+    public GameEngine.Outcome reveal(int row, int column) {
+        int index = row * width + column;
+        Work work = works.get();
+        ReentrantLock lock = locks[stripe(index)];
+        lock.lock();
+        try {
+            int value = store.get(index);
+            if ((value & (CellStore.UNCOVERED | CellStore.FLAGGED)) != 0) {
+                return GameEngine.Outcome.IGNORED;
+            }
+            steps.increment();
+            store.set(index, value | CellStore.UNCOVERED | CellStore.CLICKED);
+            uncovered.increment();
+            if ((value & CellStore.MINED) != 0) {
+                explosions.increment();
+                return GameEngine.Outcome.MINE;
+            }
+            uncoveredSafe.increment();
+            pushNeighboors(work, index);
+        } finally {
+            lock.unlock();
+        }
+        flood(work);
+        return isFinished() ? GameEngine.Outcome.WON : GameEngine.Outcome.SAFE;
+    }
+
+    /**
+     * Adds a flag on a covered dot, or removes it
+     *
+     * @param row
+     *            the selected line
+     * @param column
+     *            the selected column
+     * @return FLAGGED, or IGNORED if the dot is uncovered
+     */
+    public GameEngine.Outcome toggleFlag(int row, int column) {
+        int index = row * width + column;
+        Work work = works.get();
+        int count = lockNeighboorhood(work, row, column);
+        try {
+            if (GameModel.DEBUG) {
+                checkLocked(row, column);
+            }
+            int value = store.get(index);
+            if ((value & CellStore.UNCOVERED) != 0) {
+                return GameEngine.Outcome.IGNORED;
+            }
+            store.set(index, value ^ CellStore.FLAGGED);
+            int delta = (value & CellStore.FLAGGED) == 0 ? 1 : -1;
+            gameModel.addToFlagCounters(index, delta);
+            flags.add(delta);
+            return GameEngine.Outcome.FLAGGED;
+        } finally {
+            unlock(work, count);
+        }
+    }
+
+    /**
+     * Chords on an uncovered number with as many flagged neighboors as
+     * neighbooring mines: its other covered neighboors are revealed
+     *
+     * @param row
+     *            the selected line
+     * @param column
+     *            the selected column
+     * @return the outcome of the move, IGNORED if the dot cannot be chorded
+     */
+    public GameEngine.Outcome chord(int row, int column) {
+        int index = row * width + column;
+        Work work = works.get();
+        boolean exploded = false;
+        boolean changed = false;
+        int count = lockNeighboorhood(work, row, column);
+        try {
+            if (GameModel.DEBUG) {
+                checkLocked(row, column);
+            }
+            int value = store.get(index);
+            int mines = value & CellStore.COUNT_MASK;
+            if ((value & (CellStore.UNCOVERED | CellStore.MINED)) != CellStore.UNCOVERED || mines == 0
+                    || gameModel.getNeighbooringFlags(row, column) != mines) {
+                return GameEngine.Outcome.IGNORED;
+            }
+            for (int x = Math.max(row - 1, 0); x <= Math.min(row + 1, heigth - 1); x++) {
+                for (int y = Math.max(column - 1, 0); y <= Math.min(column + 1, width - 1); y++) {
+                    int neighboor = x * width + y;
+                    int state = store.get(neighboor);
+                    if ((state & (CellStore.UNCOVERED | CellStore.FLAGGED)) != 0) {
+                        continue;
+                    }
+                    changed = true;
+                    uncovered.increment();
+                    if ((state & CellStore.MINED) != 0) {
+                        store.set(neighboor, state | CellStore.UNCOVERED | CellStore.CLICKED);
+                        explosions.increment();
+                        exploded = true;
+                    } else {
+                        store.set(neighboor, state | CellStore.UNCOVERED);
+                        uncoveredSafe.increment();
+                        pushNeighboors(work, neighboor);
+                    }
+                }
+            }
+            if (changed) {
+                steps.increment();
+            }
+        } finally {
+            unlock(work, count);
+        }
+        if (!changed) {
+            return GameEngine.Outcome.IGNORED;
+        }
+        flood(work);
+        if (exploded) {
+            return GameEngine.Outcome.MINE;
+        }
+        return isFinished() ? GameEngine.Outcome.WON : GameEngine.Outcome.SAFE;
+    }
+
+    /**
+     * Returns true once every safe dot is uncovered
+     *
+     * @return true if the board is cleared
+     */
+    public boolean isFinished() {
+        return uncoveredSafeBefore + uncoveredSafe.sum() == safeDots;
+    }
+
+    /**
+     * Getter method for the number of moves played on this board
+     *
+     * @return the number of steps
+     */
+    public long getNumberOfSteps() {
+        return steps.sum();
+    }
+
+    /**
+     * Getter method for the number of mines hit on this board
+     *
+     * @return the number of explosions
+     */
+    public long getNumberOfExplosions() {
+        return explosions.sum();
+    }
+
+    /**
+     * Getter method for the number of dots uncovered on this board
+     *
+     * @return the number of dots uncovered since the board was created
+     */
+    public long getNumberUncovered() {
+        return uncovered.sum();
+    }
+
+    /**
+     * Adds the counters of this board to those of the model, once every
+     * thread is done. The board must not be used afterwards.
+     */
+    public void commit() {
+        gameModel.addCounters((int) uncovered.sum(), (int) uncoveredSafe.sum(), (int) flags.sum());
+        gameModel.restoreSteps(gameModel.getNumberOfSteps() + (int) steps.sum());
+        gameModel.markAllDirty();
+    }
+
+    /**
+     * Opens the dots put aside, tile by tile, holding one lock at a time
+     */
+    private void flood(Work work) {
+        while (work.pendingTop > 0) {
+            int first = work.pending[work.pendingTop - 1];
+            int tile = tileOf(first);
+            ReentrantLock lock = locks[tile & (STRIPES - 1)];
+            int opened = 0;
+            lock.lock();
+            try {
+                while (work.pendingTop > 0 && tileOf(work.pending[work.pendingTop - 1]) == tile) {
+                    int index = work.pending[--work.pendingTop];
+                    int result = open(index);
+                    opened += result & 1;
+                    if (result == 3) {
+                        work.pushLocal(index);
+                    }
+                }
+                while (work.localTop > 0) {
+                    int index = work.local[--work.localTop];
+                    int i = index / width;
+                    int j = index - i * width;
+                    for (int x = Math.max(i - 1, 0); x <= Math.min(i + 1, heigth - 1); x++) {
+                        for (int y = Math.max(j - 1, 0); y <= Math.min(j + 1, width - 1); y++) {
+                            int neighboor = x * width + y;
+                            if (tileOf(neighboor) != tile) {
+                                work.pushPending(neighboor);
+                            } else {
+                                int result = open(neighboor);
+                                opened += result & 1;
+                                if (result == 3) {
+                                    work.pushLocal(neighboor);
+                                }
+                            }
+                        }
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (opened > 0) {
+                uncovered.add(opened);
+                uncoveredSafe.add(opened);
+            }
+        }
+    }
+
+    /**
+     * Uncovers a dot if it is covered, not mined and not flagged. The lock
+     * of its tile must be held.
+     *
+     * @return 0 if nothing changed, 1 if the dot was uncovered, 3 if it was
+     *         uncovered and is blank
+     */
+    private int open(int index) {
+        int value = store.get(index);
+        if ((value & CLOSED) != 0) {
+            return 0;
+        }
+        store.set(index, value | CellStore.UNCOVERED);
+        return (value & CellStore.COUNT_MASK) == 0 ? 3 : 1;
+    }
+
+    private void pushNeighboors(Work work, int index) {
+        int i = index / width;
+        int j = index - i * width;
+        for (int x = Math.max(i - 1, 0); x <= Math.min(i + 1, heigth - 1); x++) {
+            for (int y = Math.max(j - 1, 0); y <= Math.min(j + 1, width - 1); y++) {
+                if (x != i || y != j) {
+                    work.pushPending(x * width + y);
+                }
+            }
+        }
+    }
+
+    private int tileOf(int index) {
+        int i = index / width;
+        return (i >>> TILE_SHIFT) * tilesPerRow + ((index - i * width) >>> TILE_SHIFT);
+    }
+
+    private int stripe(int index) {
+        return tileOf(index) & (STRIPES - 1);
+    }
+
+    /**
+     * Takes the locks of the tiles of the 3 x 3 neighboorhood of a dot, in
+     * ascending order. The neighboorhood is smaller than a tile, so its
+     * tiles are those of its four corners.
+     *
+     * @return the number of locks taken, listed in work.stripes
+     */
+    private int lockNeighboorhood(Work work, int row, int column) {
+        int top = Math.max(row - 1, 0) * width;
+        int bottom = Math.min(row + 1, heigth - 1) * width;
+        int left = Math.max(column - 1, 0);
+        int right = Math.min(column + 1, width - 1);
+        int count = addStripe(work, 0, top + left);
+        count = addStripe(work, count, top + right);
+        count = addStripe(work, count, bottom + left);
+        count = addStripe(work, count, bottom + right);
+        Arrays.sort(work.stripes, 0, count);
+        for (int k = 0; k < count; k++) {
+            locks[work.stripes[k]].lock();
+        }
+        return count;
+    }
+
+    /**
+     * Lists the stripe of a dot in work.stripes, unless it is already there
+     *
+     * @return the number of stripes listed
+     */
+    private int addStripe(Work work, int count, int index) {
+        int stripe = stripe(index);
+        for (int k = 0; k < count; k++) {
+            if (work.stripes[k] == stripe) {
+                return count;
+            }
+        }
+        work.stripes[count] = stripe;
+        return count + 1;
+    }
+
+    /**
+     * Checks that the current thread holds the lock of every dot of the 3 x 3
+     * neighboorhood of a dot
+     *
+     * @throws IllegalStateException if a lock is missing
+     */
+    private void checkLocked(int row, int column) {
+        for (int x = Math.max(row - 1, 0); x <= Math.min(row + 1, heigth - 1); x++) {
+            for (int y = Math.max(column - 1, 0); y <= Math.min(column + 1, width - 1); y++) {
+                if (!locks[stripe(x * width + y)].isHeldByCurrentThread()) {
+                    throw new IllegalStateException("ConcurrentBoard: the lock of (" + x + "," + y
+                            + ") is not held around (" + row + "," + column + ")");
+                }
+            }
+        }
+    }
+
+    private void unlock(Work work, int count) {
+        for (int k = count - 1; k >= 0; k--) {
+            locks[work.stripes[k]].unlock();
+        }
+    }
+}
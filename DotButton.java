@@ -1,5 +1,8 @@
 import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
 import java.io.IOException;
+import java.net.URL;
 
 import javax.imageio.ImageIO;
 import javax.swing.ImageIcon;
@@ -51,8 +54,15 @@ public class DotButton extends JButton {
      * An array is used to cache all the images. Since the images are not
      * modified, all the cells that display the same image reuse the same
      * <b>ImageIcon</b> object. Notice the use of the keyword <b>static</b>.
+     * All the icons are decoded once, by <b>loadIcons</b>, into a single
+     * atlas image (one square per icon, side by side); the cached icons are
+     * views of that atlas.
      */
     private static final ImageIcon[]icons = new ImageIcon[NUMBER_OF_ICONS];
+    private static BufferedImage atlas;
+    private static int iconSize;
+    private static int decodeCount;
+    private static long decodeNanos;
 
     private int column;
     private int row;
@@ -86,7 +96,10 @@ public class DotButton extends JButton {
      *  defined in this class
      */
     public void setIconNumber(int iconNumber) {
-        this.iconNumber = iconNumber;    
+        if (this.iconNumber != iconNumber) {
+            this.iconNumber = iconNumber;
+            setIcon(getImageIcon());
+        }
     }
  
     /**
@@ -114,29 +127,127 @@ public class DotButton extends JButton {
      * @return the image to be displayed by the button
      */
     private ImageIcon getImageIcon() {
-        Image image = null;
-        try {
-            image = ImageIO.read(getClass().getResource("icons/" + getIconFileName()));
-        } catch (IOException e) {
-            e.printStackTrace();
+        return getIcon(iconNumber);
+    }
+
+    /**
+     * Returns the cached <b>ImageIcon</b> of a given icon number.
+     * 
+     * @param iconNumber
+     *            the icon number, based on the predifined constant values
+     *  defined in this class
+     * @return the image of that icon number
+     */
+    public static ImageIcon getIcon(int iconNumber) {
+        loadIcons();
+        return icons[iconNumber];
+    }
+
+    /**
+     * Draws the icon of a given icon number straight from the atlas
+     * 
+     * @param g
+     *            the graphics to draw on
+     * @param iconNumber
+     *            the icon number
+     * @param x
+     *            the x coordinate of the top left corner
+     * @param y
+     *            the y coordinate of the top left corner
+     */
+    public static void paintIcon(Graphics g, int iconNumber, int x, int y) {
+        loadIcons();
+        int sx = iconNumber * iconSize;
+        g.drawImage(atlas, x, y, x + iconSize, y + iconSize, sx, 0, sx + iconSize, iconSize, null);
+    }
+
+    /**
+     * Returns the side, in pixels, of the square used by every icon
+     * 
+     * @return the size of an icon
+     */
+    public static int getIconSize() {
+        loadIcons();
+        return iconSize;
+    }
+
+    /**
+     * Returns the number of image files decoded so far. Once the icons are
+     * loaded, this number must not change.
+     * 
+     * @return the number of calls to ImageIO.read
+     */
+    public static int getDecodeCount() {
+        return decodeCount;
+    }
+
+    /**
+     * Returns the time spent decoding image files so far
+     * 
+     * @return the decoding time, in nanoseconds
+     */
+    public static long getDecodeNanos() {
+        return decodeNanos;
+    }
+
+    /**
+     * Decodes all the icons, once, into the atlas. When a display is available
+     * the atlas is a compatible image of the screen, so drawing from it needs
+     * no conversion. Does nothing if the icons are already loaded.
+     */
+    public static synchronized void loadIcons() {
+        if (atlas != null) {
+            return;
         }
-        if (icons[iconNumber] == null) {
-            if(image != null) {
-                icons[iconNumber] = new ImageIcon(image);
-            } else {
-                icons[iconNumber] = new ImageIcon("icons/" + getIconFileName());
+        Image[] images = new Image[NUMBER_OF_ICONS];
+        for (int i = 0; i < NUMBER_OF_ICONS; i++) {
+            long start = System.nanoTime();
+            try {
+                URL url = DotButton.class.getResource("icons/" + getIconFileName(i));
+                if (url != null) {
+                    images[i] = ImageIO.read(url);
+                } else {
+                    images[i] = ImageIO.read(new File("icons/" + getIconFileName(i)));
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            decodeCount++;
+            decodeNanos += System.nanoTime() - start;
+            if (images[i] != null) {
+                iconSize = Math.max(iconSize, Math.max(images[i].getWidth(null), images[i].getHeight(null)));
             }
         }
-        return icons[iconNumber];
+        iconSize = Math.max(iconSize, 1);
+
+        BufferedImage sheet;
+        if (GraphicsEnvironment.isHeadless()) {
+            sheet = new BufferedImage(iconSize * NUMBER_OF_ICONS, iconSize, BufferedImage.TYPE_INT_ARGB);
+        } else {
+            sheet = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                    .getDefaultConfiguration()
+                    .createCompatibleImage(iconSize * NUMBER_OF_ICONS, iconSize, Transparency.TRANSLUCENT);
+        }
+        Graphics2D g = sheet.createGraphics();
+        for (int i = 0; i < NUMBER_OF_ICONS; i++) {
+            if (images[i] != null) {
+                g.drawImage(images[i], i * iconSize, 0, iconSize, iconSize, null);
+            }
+            icons[i] = new ImageIcon(sheet.getSubimage(i * iconSize, 0, iconSize, iconSize));
+        }
+        g.dispose();
+        atlas = sheet;
     }
 
     /**
      * This method returns the name of the file containing the image 
-     * corresponding to the current value of the variable iconNumber.
+     * corresponding to a given icon number.
      *
+     * @param iconNumber
+     *            the icon number
      * @return the name of the icon file to be used
      */
-    private String getIconFileName(){
+    private static String getIconFileName(int iconNumber){
         switch(iconNumber) {
             case 0 : return "Minesweeper_0.png";
             case 1 : return "Minesweeper_1.png";
@@ -1,36 +1,34 @@
 
 /**
- * The class <b>DotInfo</b> is a simple helper class to store 
+ * The class <b>DotInfo</b> is a simple helper class to access 
  * the state (e.g. clicked, mined, number of neighbooring mines...) 
- * at the dot position (x,y)
+ * at the dot position (x,y).
+ * It is a lightweight view: the state itself is stored in the board of
+ * the <b>GameModel</b> the view was obtained from.
  *
  * @author Guy-Vincent Jourdan, University of Ottawa
  */
 
 public class DotInfo {
 
-    
-    private boolean covered;
-    private boolean mined = false;
-    private int neighbooringMines;
-    private boolean wasClicked;
-    private int x;
-    private int y;
+    private final GameModel model;
+    private final int x;
+    private final int y;
+
     /**
      * Constructor, used to initialize the instance variables
      * 
+     * @param model
+     *            the model holding the state of the dot
      * @param x
      *            the x coordinate
      * @param y
      *            the y coordinate
      */
-    public DotInfo(int x, int y){
+    DotInfo(GameModel model, int x, int y){
+        this.model = model;
         this.x = x;
         this.y = y;
-        this.covered = true;
-        this.mined = false;
-        this.neighbooringMines = 0;
-        this.wasClicked = false;
     }
 
     /**
@@ -56,7 +54,7 @@ public class DotInfo {
      * Setter for mined
      */
     public void setMined() {
-        this.mined = true;
+        model.setMined(x, y);
     }
 
     /**
@@ -65,7 +63,7 @@ public class DotInfo {
      * @return mined
      */
     public boolean isMined() {
-        return this.mined;
+        return model.isMined(x, y);
     }
 
 
@@ -73,7 +71,7 @@ public class DotInfo {
      * Setter for covered
      */
     public void uncover() {
-        this.covered = false;
+        model.uncover(x, y);
     }
 
     /**
@@ -82,7 +80,7 @@ public class DotInfo {
      * @return covered
      */
     public boolean isCovered(){
-        return this.covered;
+        return model.isCovered(x, y);
     }
 
 
@@ -91,7 +89,7 @@ public class DotInfo {
      * Setter for wasClicked
      */
     public void click() {
-        this.wasClicked = true;
+        model.markClicked(x, y);
     }
 
 
@@ -101,7 +99,27 @@ public class DotInfo {
      * @return wasClicked
      */
     public boolean hasBeenClicked() {
-        return this.wasClicked;
+        return model.hasBeenClicked(x, y);
+    }
+
+
+    /**
+     * Adds or removes the flag of the dot
+     *
+     * @return true if the flag was changed
+     */
+    public boolean toggleFlag() {
+        return model.toggleFlag(x, y);
+    }
+
+
+    /**
+     * Getter for flagged
+     *
+     * @return flagged
+     */
+    public boolean isFlagged() {
+        return model.isFlagged(x, y);
     }
 
 
@@ -112,7 +130,7 @@ public class DotInfo {
      *          number of neighbooring mines
      */
     public void setNeighbooringMines(int neighbooringMines) {
-        this.neighbooringMines = neighbooringMines;
+        model.setNeighbooringMines(x, y, neighbooringMines);
     }
 
     /**
@@ -121,12 +139,12 @@ public class DotInfo {
      * @return neighbooringMines
      */
     public int getNeighbooringMines() {
-        return this.neighbooringMines;
+        return model.getNeighbooringMines(x, y);
     }
 
     @Override
     public String toString() {
-        return "DotInfo(covered: " + covered + ", mined: " + mined + ", neighbooringMines: " + neighbooringMines
-                + ", wasCliked: " + wasClicked + ", x: " + x + ", y: " + y + ")";
+        return "DotInfo(covered: " + isCovered() + ", mined: " + isMined() + ", neighbooringMines: " + getNeighbooringMines()
+                + ", wasCliked: " + hasBeenClicked() + ", flagged: " + isFlagged() + ", x: " + x + ", y: " + y + ")";
     }
 }
@@ -0,0 +1,726 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The class <b>EndlessBoard</b> is the board of the "endless" mode: a board
+ * with no border, split in square chunks of CHUNK_SIZE x CHUNK_SIZE dots.
+ *
+ * Whether a dot is mined is a pure function of the global seed, the chunk
+ * coordinates and the position of the dot in the chunk, so a chunk can be
+ * created, dropped and created again at any time. Chunks are created only
+ * when a reveal or a query reaches them, and at most a given number of them
+ * are kept in memory, in least recently used order. When a chunk is evicted,
+ * only what the player changed is kept: nothing for an untouched chunk, a
+ * shared marker for a fully solved chunk, and otherwise the uncovered dots,
+ * run-length encoded: the lengths of the covered and uncovered runs of safe
+ * dots in row order (the mines are known from the seed, and skipped), then
+ * the uncovered mines. An explored region takes a few runs per row.
+ *
+ * The changes of evicted chunks are kept in memory up to a given number of
+ * bytes. Past it, the oldest are written to a temporary spill file. Their
+ * place in that file is kept in an index, itself on disk: an open addressing
+ * table of 16 bytes per spilled chunk, in a second temporary file, read a few
+ * slots at a time. So the heap stays flat however far the player goes. A
+ * chunk written again is appended: the spill file grows with the number of
+ * evictions. Both files are deleted by <b>close</b>.
+ *
+ * Zones are opened breadth first, at most MAX_REVEAL dots per call. The blank
+ * dots of a larger zone whose neighboors are not opened yet are kept as a
+ * pending frontier, opened by the next calls, so a zone is never left
+ * half open: on a board too sparse to ever finish, the frontier is only the
+ * border of the opened region.
+ *
+ * The dots around (0,0) are never mined, so the game can start there. Hitting
+ * a mine does not end the game: the mine is uncovered and counted.
+ */
+
+public class EndlessBoard implements Closeable {
+
+    public static final int CHUNK_BITS = 6;
+    public static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int CHUNK_CELLS = CHUNK_SIZE * CHUNK_SIZE;
+    private static final byte[] SOLVED = new byte[0];
+
+    /**
+     * Default number of bytes of evicted changes kept in memory
+     */
+    public static final long DEFAULT_EVICTED_BYTES = 4L << 20;
+
+    // estimated memory taken by an entry of the map of evicted chunks,
+    // besides its changes
+    private static final int ENTRY_BYTES = 96;
+    // number of slots of the index read at once, 16 bytes each
+    private static final int INDEX_BLOCK = 16;
+    private static final long NOT_SPILLED = -2;
+    private static final long SPILLED_SOLVED = -1;
+
+    /**
+     * Maximum number of dots uncovered by a single call, so that a reveal
+     * on a very sparse board stays bounded. The blank dots whose neighboors
+     * are not opened yet are kept as a pending frontier, opened by the next
+     * calls.
+     */
+    public static final int MAX_REVEAL = 1 << 20;
+
+    private final long seed;
+    private final long threshold;
+    private final int maxChunks;
+    private final LinkedHashMap<Long, byte[]> chunks;
+    private final LinkedHashMap<Long, byte[]> evicted;
+    private final long maxEvictedBytes;
+    private long evictedBytes;
+    private FileChannel spill;
+    private long spillEnd;
+    private FileChannel index;
+    private long indexSlots;
+    private final ByteBuffer slots = ByteBuffer.allocate(16 * INDEX_BLOCK);
+    // the place of the slot last found by findSlot, 0 for an empty slot
+    private long slotPlace;
+    private int spilled;
+    private final byte[] scratch = new byte[3 * CHUNK_CELLS + 8];
+    private long uncovered;
+    private long explosions;
+    // the blank dots whose neighboors are still to be opened, in a ring
+    private long[] queue;
+    private int head;
+    private int pending;
+
+    /**
+     * Constructor used for initializing an endless board
+     *
+     * @param seed
+     *            the global seed of the board
+     * @param density
+     *            the share of mined dots, between 0 and 1
+     * @param maxChunks
+     *            the maximum number of chunks kept in memory
+     */
+    public EndlessBoard(long seed, double density, int maxChunks) {
+        this(seed, density, maxChunks, DEFAULT_EVICTED_BYTES);
+    }
+
+    /**
+     * Constructor used for initializing an endless board, with a given
+     * memory budget for the changes of evicted chunks
+     *
+     * @param seed
+     *            the global seed of the board
+     * @param density
+     *            the share of mined dots, between 0 and 1
+     * @param maxChunks
+     *            the maximum number of chunks kept in memory
+     * @param maxEvictedBytes
+     *            the number of bytes of evicted changes kept in memory
+     *            before they are spilled to disk
+     */
+    public EndlessBoard(long seed, double density, int maxChunks, long maxEvictedBytes) {
+        this.seed = seed;
+        this.threshold = (long) (density * (1L << 53));
+        this.maxChunks = maxChunks;
+        this.maxEvictedBytes = maxEvictedBytes;
+        this.chunks = new LinkedHashMap<Long, byte[]>(16, 0.75f, true);
+        this.evicted = new LinkedHashMap<Long, byte[]>();
+        this.queue = new long[64];
+    }
+
+    /**
+     * Returns true if the dot at location (x,y) is mined. Only depends on
+     * the seed: no chunk is created.
+     *
+     * @param x
+     *            the x coordinate of the dot
+     * @param y
+     *            the y coordinate of the dot
+     * @return true if the dot is mined
+     */
+    public boolean isMined(int x, int y) {
+        if (x >= -1 && x <= 1 && y >= -1 && y <= 1) {
+            return false;
+        }
+        long key = chunkKey(x >> CHUNK_BITS, y >> CHUNK_BITS);
+        int local = ((x & CHUNK_MASK) << CHUNK_BITS) | (y & CHUNK_MASK);
+        return (mix(mix(seed + key * 0x9E3779B97F4A7C15L) + local) >>> 11) < threshold;
+    }
+
+    /**
+     * Returns true if the dot at location (x,y) is covered
+     *
+     * @param x
+     *            the x coordinate of the dot
+     * @param y
+     *            the y coordinate of the dot
+     * @return true if the dot is covered
+     */
+    public boolean isCovered(int x, int y) {
+        return (cell(x, y) & CellStore.UNCOVERED) == 0;
+    }
+
+    /**
+     * Returns the number of neighbooring mines of the dot at location (x,y)
+     *
+     * @param x
+     *            the x coordinate of the dot
+     * @param y
+     *            the y coordinate of the dot
+     * @return the number of neighbooring mines
+     */
+    public int getNeighbooringMines(int x, int y) {
+        return cell(x, y) & CellStore.COUNT_MASK;
+    }
+
+    /**
+     * Selects the dot at location (x,y): uncovers it and, like in the
+     * normal game, the zone around it. At most MAX_REVEAL dots are
+     * uncovered: past it, the rest of the zone is left pending, and opened
+     * by the next calls to <b>reveal</b> or <b>finishReveal</b>.
+     *
+     * @param x
+     *            the x coordinate of the dot
+     * @param y
+     *            the y coordinate of the dot
+     * @return the outcome of the move
+     */
+    public GameEngine.Outcome reveal(int x, int y) {
+        int value = cell(x, y);
+        if ((value & CellStore.UNCOVERED) != 0) {
+            return GameEngine.Outcome.IGNORED;
+        }
+        uncover(x, y);
+        if ((value & CellStore.MINED) != 0) {
+            explosions++;
+            return GameEngine.Outcome.MINE;
+        }
+        head = (head - 1) & (queue.length - 1);
+        queue[head] = position(x, y);
+        pending++;
+        if (pending == queue.length) {
+            grow();
+        }
+        flood(true, MAX_REVEAL - 1);
+        return GameEngine.Outcome.SAFE;
+    }
+
+    /**
+     * Opens the zones left pending by the previous reveals, up to
+     * MAX_REVEAL dots
+     *
+     * @return the number of dots uncovered
+     */
+    public int finishReveal() {
+        return flood(false, MAX_REVEAL);
+    }
+
+    /**
+     * Returns the number of blank dots uncovered whose neighboors are not
+     * all opened yet, because a reveal reached MAX_REVEAL
+     *
+     * @return the size of the pending frontier, 0 once every zone is open
+     */
+    public int getPendingFrontier() {
+        return pending;
+    }
+
+    /**
+     * Returns the number of uncovered dots, mined or not
+     *
+     * @return the number of uncovered dots
+     */
+    public long getUncovered() {
+        return uncovered;
+    }
+
+    /**
+     * Returns the number of mines hit
+     *
+     * @return the number of uncovered mines
+     */
+    public long getExplosions() {
+        return explosions;
+    }
+
+    /**
+     * Returns the number of chunks currently held in memory
+     *
+     * @return the number of live chunks
+     */
+    public int getLoadedChunks() {
+        return chunks.size();
+    }
+
+    /**
+     * Returns the number of evicted chunks whose changes are kept in memory
+     *
+     * @return the number of compressed chunks in memory
+     */
+    public int getEvictedChunks() {
+        return evicted.size();
+    }
+
+    /**
+     * Returns the estimated memory taken by the changes of the evicted
+     * chunks kept in memory
+     *
+     * @return a number of bytes, at most the budget given at construction
+     */
+    public long getEvictedBytes() {
+        return evictedBytes;
+    }
+
+    /**
+     * Returns the number of evicted chunks written to the spill file
+     *
+     * @return the number of spilled chunks
+     */
+    public int getSpilledChunks() {
+        return spilled;
+    }
+
+    /**
+     * Returns the size of the spill file
+     *
+     * @return the number of bytes written to disk
+     */
+    public long getSpillBytes() {
+        return spillEnd;
+    }
+
+    /**
+     * Deletes the spill file and its index. The board must not be used
+     * afterwards.
+     *
+     * @throws IOException if the files cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (index != null) {
+            index.close();
+            index = null;
+        }
+        if (spill != null) {
+            spill.close();
+            spill = null;
+        }
+    }
+
+    /**
+     * Opens the neighboors of the dots in the queue, and queues the blank
+     * dots found doing so, until the queue is empty or about budget dots
+     * are uncovered. Zones are opened breadth first, so the queue only
+     * holds their border. The head of the queue is the dot selected if
+     * first is true, whose neighboors are opened even if it is not blank.
+     *
+     * @return the number of dots uncovered
+     */
+    private int flood(boolean first, int budget) {
+        int revealed = 0;
+        while (pending > 0 && revealed < budget) {
+            long position = queue[head];
+            head = (head + 1) & (queue.length - 1);
+            pending--;
+            int px = (int) (position >> 32);
+            int py = (int) position;
+            if (!first && (cell(px, py) & CellStore.COUNT_MASK) != 0) {
+                continue;
+            }
+            first = false;
+            for (int nx = px - 1; nx <= px + 1; nx++) {
+                for (int ny = py - 1; ny <= py + 1; ny++) {
+                    int n = cell(nx, ny);
+                    if ((n & (CellStore.UNCOVERED | CellStore.MINED)) == 0) {
+                        uncover(nx, ny);
+                        revealed++;
+                        if ((n & CellStore.COUNT_MASK) == 0) {
+                            queue[(head + pending) & (queue.length - 1)] = position(nx, ny);
+                            if (++pending == queue.length) {
+                                grow();
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return revealed;
+    }
+
+    /**
+     * Doubles the ring of the queue once it is full
+     */
+    private void grow() {
+        long[] larger = new long[queue.length * 2];
+        System.arraycopy(queue, head, larger, 0, queue.length - head);
+        System.arraycopy(queue, 0, larger, queue.length - head, head);
+        queue = larger;
+        head = 0;
+    }
+
+    private static long position(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    private int cell(int x, int y) {
+        return chunk(x >> CHUNK_BITS, y >> CHUNK_BITS)[((x & CHUNK_MASK) << CHUNK_BITS) | (y & CHUNK_MASK)] & 0xFF;
+    }
+
+    private void uncover(int x, int y) {
+        byte[] chunk = chunk(x >> CHUNK_BITS, y >> CHUNK_BITS);
+        int local = ((x & CHUNK_MASK) << CHUNK_BITS) | (y & CHUNK_MASK);
+        chunk[local] |= CellStore.UNCOVERED;
+        uncovered++;
+    }
+
+    /**
+     * Returns the chunk at chunk coordinates (cx,cy), creating it, and 
+     * evicting the least recently used chunks, if needed
+     */
+    private byte[] chunk(int cx, int cy) {
+        long key = chunkKey(cx, cy);
+        byte[] chunk = chunks.get(key);
+        if (chunk != null) {
+            return chunk;
+        }
+        chunk = generate(cx, cy);
+        byte[] changes = evicted.remove(key);
+        if (changes != null) {
+            evictedBytes -= ENTRY_BYTES + changes.length;
+        } else {
+            changes = unspill(key);
+        }
+        if (changes == SOLVED) {
+            for (int local = 0; local < CHUNK_CELLS; local++) {
+                if ((chunk[local] & CellStore.MINED) == 0) {
+                    chunk[local] |= CellStore.UNCOVERED;
+                }
+            }
+        } else if (changes != null) {
+            restore(chunk, changes);
+        }
+        chunks.put(key, chunk);
+        if (chunks.size() > maxChunks) {
+            evictEldest(key);
+        }
+        return chunk;
+    }
+
+    /**
+     * Evicts the least recently used chunk, keeping its changes in compact
+     * form. The chunk just loaded is never evicted.
+     */
+    private void evictEldest(long loaded) {
+        Iterator<Map.Entry<Long, byte[]>> iterator = chunks.entrySet().iterator();
+        Map.Entry<Long, byte[]> eldest = iterator.next();
+        if (eldest.getKey() == loaded) {
+            return;
+        }
+        byte[] changes = compress(eldest.getValue());
+        if (changes != null) {
+            evicted.put(eldest.getKey(), changes);
+            evictedBytes += ENTRY_BYTES + changes.length;
+            while (evictedBytes > maxEvictedBytes && !evicted.isEmpty()) {
+                spillEldest();
+            }
+        }
+        iterator.remove();
+    }
+
+    /**
+     * Encodes the uncovered dots of a chunk: the number of uncovered mines
+     * and the gaps between them, then the lengths of the alternate covered
+     * and uncovered runs of safe dots, starting with a covered run; the last
+     * run is left out. All numbers are varints.
+     *
+     * @return null if nothing is uncovered, SOLVED if every safe dot and no
+     *         mine is uncovered, the encoded changes otherwise
+     */
+    private byte[] compress(byte[] chunk) {
+        int mines = 0;
+        int safeUncovered = 0;
+        int safe = 0;
+        for (int local = 0; local < CHUNK_CELLS; local++) {
+            int value = chunk[local];
+            if ((value & CellStore.MINED) == 0) {
+                safe++;
+                if ((value & CellStore.UNCOVERED) != 0) {
+                    safeUncovered++;
+                }
+            } else if ((value & CellStore.UNCOVERED) != 0) {
+                mines++;
+            }
+        }
+        if (mines == 0 && safeUncovered == 0) {
+            return null;
+        }
+        if (mines == 0 && safeUncovered == safe) {
+            return SOLVED;
+        }
+        int size = putVarint(0, mines);
+        int last = 0;
+        for (int local = 0; local < CHUNK_CELLS && mines > 0; local++) {
+            if ((chunk[local] & (CellStore.MINED | CellStore.UNCOVERED)) == (CellStore.MINED | CellStore.UNCOVERED)) {
+                size = putVarint(size, local - last);
+                last = local;
+            }
+        }
+        int run = 0;
+        int state = 0;
+        for (int local = 0; local < CHUNK_CELLS; local++) {
+            int value = chunk[local];
+            if ((value & CellStore.MINED) != 0) {
+                continue;
+            }
+            if ((value & CellStore.UNCOVERED) != state) {
+                size = putVarint(size, run);
+                state ^= CellStore.UNCOVERED;
+                run = 0;
+            }
+            run++;
+        }
+        return Arrays.copyOf(scratch, size);
+    }
+
+    /**
+     * Uncovers the dots of a new chunk listed by <b>compress</b>
+     */
+    private static void restore(byte[] chunk, byte[] changes) {
+        int[] position = {0};
+        int mines = getVarint(changes, position);
+        int local = 0;
+        for (int k = 0; k < mines; k++) {
+            local += getVarint(changes, position);
+            chunk[local] |= CellStore.UNCOVERED;
+        }
+        int state = 0;
+        int run = position[0] < changes.length ? getVarint(changes, position) : CHUNK_CELLS;
+        for (local = 0; local < CHUNK_CELLS; local++) {
+            if ((chunk[local] & CellStore.MINED) != 0) {
+                continue;
+            }
+            while (run == 0) {
+                state ^= CellStore.UNCOVERED;
+                run = position[0] < changes.length ? getVarint(changes, position) : CHUNK_CELLS;
+            }
+            chunk[local] |= state;
+            run--;
+        }
+    }
+
+    private int putVarint(int size, int value) {
+        while ((value & ~0x7F) != 0) {
+            scratch[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        scratch[size++] = (byte) value;
+        return size;
+    }
+
+    private static int getVarint(byte[] bytes, int[] position) {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = bytes[position[0]++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    /**
+     * Writes the changes of the oldest evicted chunk at the end of the
+     * spill file, and records their place in the index
+     */
+    private void spillEldest() {
+        Iterator<Map.Entry<Long, byte[]>> iterator = evicted.entrySet().iterator();
+        Map.Entry<Long, byte[]> eldest = iterator.next();
+        byte[] changes = eldest.getValue();
+        long place = SPILLED_SOLVED;
+        try {
+            if (changes != SOLVED) {
+                if (spill == null) {
+                    Path file = Files.createTempFile("endless", ".chunks");
+                    spill = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                            StandardOpenOption.DELETE_ON_CLOSE);
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(changes);
+                while (buffer.hasRemaining()) {
+                    spill.write(buffer, spillEnd + buffer.position());
+                }
+                place = spillEnd << 16 | changes.length;
+                spillEnd += changes.length;
+            }
+            putPlace(eldest.getKey(), place);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        evictedBytes -= ENTRY_BYTES + changes.length;
+        iterator.remove();
+    }
+
+    /**
+     * Reads back the changes of a spilled chunk. The place stays listed: the
+     * changes are spilled again, at a new place, if they are evicted later
+     * on, and until then the newer copy kept in memory is read first.
+     *
+     * @return the changes, or null if the chunk was never spilled
+     */
+    private byte[] unspill(long key) {
+        if (spilled == 0) {
+            return null;
+        }
+        try {
+            findSlot(key);
+            if (slotPlace == 0) {
+                return null;
+            } else if (slotPlace == SPILLED_SOLVED) {
+                return SOLVED;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) (slotPlace & 0xFFFF));
+            while (buffer.hasRemaining()) {
+                if (spill.read(buffer, (slotPlace >>> 16) + buffer.position()) < 0) {
+                    throw new IOException("spill file truncated");
+                }
+            }
+            return buffer.array();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Records the place of a spilled chunk in the index, which is doubled
+     * once half full
+     */
+    private void putPlace(long key, long place) throws IOException {
+        if (2 * (spilled + 1L) > indexSlots) {
+            growIndex();
+        }
+        long slot = findSlot(key);
+        if (slotPlace == 0) {
+            spilled++;
+        }
+        writeSlot(slot, key, place);
+    }
+
+    /**
+     * Finds the slot of a key in the index, or the empty slot where it
+     * would go, and leaves the place it holds in slotPlace. Empty slots
+     * read as zeros, and no place is 0.
+     *
+     * @return the number of the slot
+     */
+    private long findSlot(long key) throws IOException {
+        long mask = indexSlots - 1;
+        long slot = mix(key) & mask;
+        while (true) {
+            int count = (int) Math.min(INDEX_BLOCK, indexSlots - slot);
+            slots.clear().limit(16 * count);
+            while (slots.hasRemaining()) {
+                if (index.read(slots, 16 * slot + slots.position()) < 0) {
+                    throw new IOException("spill index truncated");
+                }
+            }
+            for (int k = 0; k < count; k++) {
+                long place = slots.getLong(16 * k + 8);
+                if (place == 0 || slots.getLong(16 * k) == key) {
+                    slotPlace = place;
+                    return slot + k;
+                }
+            }
+            slot = (slot + count) & mask;
+        }
+    }
+
+    private void writeSlot(long slot, long key, long place) throws IOException {
+        slots.clear();
+        slots.putLong(key).putLong(place).flip();
+        while (slots.hasRemaining()) {
+            index.write(slots, 16 * slot + slots.position());
+        }
+    }
+
+    /**
+     * Moves the index to a new file, twice as large, reading the old one
+     * a block at a time
+     */
+    private void growIndex() throws IOException {
+        FileChannel old = index;
+        long oldSlots = indexSlots;
+        indexSlots = Math.max(1024, 2 * indexSlots);
+        index = FileChannel.open(Files.createTempFile("endless", ".index"), StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+        index.write(ByteBuffer.allocate(1), 16 * indexSlots - 1);
+        spilled = 0;
+        if (old == null) {
+            return;
+        }
+        ByteBuffer block = ByteBuffer.allocate(1 << 16);
+        for (long position = 0; position < 16 * oldSlots; position += block.capacity()) {
+            block.clear();
+            while (block.hasRemaining() && old.read(block, position + block.position()) >= 0) {
+                // reads a block, or what is left of the old index
+            }
+            for (int k = 0; k < block.position(); k += 16) {
+                long place = block.getLong(k + 8);
+                if (place != 0) {
+                    long key = block.getLong(k);
+                    writeSlot(findSlot(key), key, place);
+                    spilled++;
+                }
+            }
+        }
+        old.close();
+    }
+
+    /**
+     * Builds the mines and the numbers of a chunk from the seed alone
+     */
+    private byte[] generate(int cx, int cy) {
+        byte[] chunk = new byte[CHUNK_CELLS];
+        int baseX = cx << CHUNK_BITS;
+        int baseY = cy << CHUNK_BITS;
+        boolean[] mined = new boolean[(CHUNK_SIZE + 2) * (CHUNK_SIZE + 2)];
+        for (int i = 0; i < CHUNK_SIZE + 2; i++) {
+            for (int j = 0; j < CHUNK_SIZE + 2; j++) {
+                mined[i * (CHUNK_SIZE + 2) + j] = isMined(baseX + i - 1, baseY + j - 1);
+            }
+        }
+        for (int i = 0; i < CHUNK_SIZE; i++) {
+            for (int j = 0; j < CHUNK_SIZE; j++) {
+                int count = 0;
+                for (int x = i; x <= i + 2; x++) {
+                    for (int y = j; y <= j + 2; y++) {
+                        if ((x != i + 1 || y != j + 1) && mined[x * (CHUNK_SIZE + 2) + y]) {
+                            count++;
+                        }
+                    }
+                }
+                boolean mine = mined[(i + 1) * (CHUNK_SIZE + 2) + j + 1];
+                chunk[(i << CHUNK_BITS) | j] = (byte) (count | (mine ? CellStore.MINED : 0));
+            }
+        }
+        return chunk;
+    }
+
+    private static long chunkKey(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+    }
+
+    /**
+     * The finalizer of SplitMix64, spreads the bits of a value
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,175 @@
+/**
+ * The class <b>FloodFill</b> computes which dots must be uncovered when a
+ * dot is selected: every covered, non mined, non flagged neighboor of the
+ * selected dot, and recursively every such neighboor of a newly uncovered
+ * dot that has zero neighbooring mines.
+ *
+ * The fill is span based: a whole horizontal run of blank dots is uncovered
+ * at once, and only the rows just above and below the run are scanned for
+ * new runs. The work stack holds dot indices (see <b>GameModel.index</b>)
+ * in a primitive array that is kept from one move to the next, so a fill
+ * allocates nothing once the stack has grown to the size of the largest
+ * open area seen so far.
+ */
+
+public class FloodFill {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final GameModel gameModel;
+    private int[] stack;
+    private int top;
+    private ParallelFloodFill parallel;
+    private int parallelThreshold;
+
+    /**
+     * Constructor used for initializing the flood fill of a model
+     *
+     * @param gameModel
+     *            the model whose board is uncovered
+     */
+    public FloodFill(GameModel gameModel) {
+        this.gameModel = gameModel;
+        this.stack = new int[INITIAL_CAPACITY];
+        this.top = 0;
+    }
+
+    /**
+     * Hands the fills that grow large over to a <b>ParallelFloodFill</b>
+     *
+     * @param parallel
+     *            the parallel fill, or null to always fill sequentially
+     * @param threshold
+     *            the number of dots uncovered sequentially before the rest
+     *            of the fill is handed over
+     */
+    public void setParallel(ParallelFloodFill parallel, int threshold) {
+        this.parallel = parallel;
+        this.parallelThreshold = threshold;
+    }
+
+    /**
+     * Uncovers the zone around the dot at location (i,j). The dot itself
+     * is expected to be already uncovered.
+     *
+     * @param i
+     *            the x coordinate of the selected dot
+     * @param j
+     *            the y coordinate of the selected dot
+     * @return the number of dots uncovered by this call
+     */
+    public int clearZone(int i, int j) {
+        int width = gameModel.getWidth();
+        int heigth = gameModel.getHeigth();
+        int uncovered = 0;
+        top = 0;
+
+        for (int x = Math.max(i - 1, 0); x <= Math.min(i + 1, heigth - 1); x++) {
+            for (int y = Math.max(j - 1, 0); y <= Math.min(j + 1, width - 1); y++) {
+                if (x == i && y == j) {
+                    continue;
+                }
+                int index = x * width + y;
+                if (isOpenable(index)) {
+                    gameModel.uncoverCell(index);
+                    uncovered++;
+                    if (isBlank(index)) {
+                        push(index);
+                    }
+                }
+            }
+        }
+
+        while (top > 0) {
+            if (parallel != null && uncovered >= parallelThreshold) {
+                // every dot left on the stack is an uncovered blank dot
+                // whose neighboors have not been opened yet
+                uncovered += parallel.fill(stack, top);
+                top = 0;
+                break;
+            }
+            int index = stack[--top];
+            int row = index / width;
+            int rowStart = row * width;
+            int left = index - rowStart;
+            int right = left;
+
+            while (left > 0 && isOpenableBlank(rowStart + left - 1)) {
+                left--;
+                gameModel.uncoverCell(rowStart + left);
+                uncovered++;
+            }
+            if (left > 0 && isOpenable(rowStart + left - 1)) {
+                gameModel.uncoverCell(rowStart + left - 1);
+                uncovered++;
+            }
+            while (right < width - 1 && isOpenableBlank(rowStart + right + 1)) {
+                right++;
+                gameModel.uncoverCell(rowStart + right);
+                uncovered++;
+            }
+            if (right < width - 1 && isOpenable(rowStart + right + 1)) {
+                gameModel.uncoverCell(rowStart + right + 1);
+                uncovered++;
+            }
+
+            int from = Math.max(left - 1, 0);
+            int to = Math.min(right + 1, width - 1);
+            if (row > 0) {
+                uncovered += scanRow(rowStart - width, from, to);
+            }
+            if (row < heigth - 1) {
+                uncovered += scanRow(rowStart + width, from, to);
+            }
+        }
+        Metrics.REVEALED.record(uncovered);
+        return uncovered;
+    }
+
+    /**
+     * Uncovers the dots of the columns [from, to] of a row adjacent to a
+     * blank run. Only the first dot of each blank run found is uncovered and
+     * pushed: the rest of the run is uncovered when that dot is popped.
+     */
+    private int scanRow(int rowStart, int from, int to) {
+        int uncovered = 0;
+        int y = from;
+        while (y <= to) {
+            int index = rowStart + y;
+            y++;
+            if (isOpenable(index)) {
+                gameModel.uncoverCell(index);
+                uncovered++;
+                if (isBlank(index)) {
+                    push(index);
+                    while (y <= to && isOpenableBlank(rowStart + y)) {
+                        y++;
+                    }
+                }
+            }
+        }
+        return uncovered;
+    }
+
+    private boolean isOpenable(int index) {
+        return (gameModel.cell(index) & (CellStore.MINED | CellStore.UNCOVERED | CellStore.FLAGGED)) == 0;
+    }
+
+    private boolean isBlank(int index) {
+        return (gameModel.cell(index) & CellStore.COUNT_MASK) == 0;
+    }
+
+    private boolean isOpenableBlank(int index) {
+        return (gameModel.cell(index) & (CellStore.MINED | CellStore.UNCOVERED | CellStore.FLAGGED
+                | CellStore.COUNT_MASK)) == 0;
+    }
+
+    private void push(int index) {
+        if (top == stack.length) {
+            int[] larger = new int[stack.length * 2];
+            System.arraycopy(stack, 0, larger, 0, top);
+            stack = larger;
+        }
+        stack[top++] = index;
+    }
+}
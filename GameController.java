@@ -1,7 +1,8 @@
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.util.LinkedList;
-import java.util.Random;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 
 import javax.swing.*;
 
@@ -9,7 +10,7 @@ import javax.swing.*;
 /**
  * The class <b>GameController</b> is the controller of the game. It is a listener
  * of the view, and has a method <b>play</b> which computes the next
- * step of the game, and  updates model and view.
+ * step of the game through the <b>GameEngine</b>, and updates the view.
  *
  * @author Guy-Vincent Jourdan, University of Ottawa
  */
@@ -19,8 +20,12 @@ public class GameController implements ActionListener {
 
     private GameModel gameModel;
     private GameView gameView;
-    private boolean firstClicked = true;
+    private GameEngine gameEngine;
+    private ProbabilityEngine probabilityEngine;
+    private boolean showProbabilities;
+    private MoveJournal journal;
     private final String TAG = GameController.class.getSimpleName();
+    private static final long UNDO_BUDGET_BYTES = 64L << 20;
 
     /**
      * Constructor used for initializing the controller. It creates the game's view 
@@ -34,7 +39,39 @@ public class GameController implements ActionListener {
      *            the number of mines hidden in the board
      */
     public GameController(int width, int height, int numberOfMines) {
-        gameModel = new GameModel(width, height, numberOfMines);
+        this(new GameModel(width, height, numberOfMines));
+    }
+
+    /**
+     * Constructor used for initializing the controller with reproducible
+     * boards. It creates the game's view and the game's model instances
+     * 
+     * @param width
+     *            the width of the board on which the game will be played
+     * @param height
+     *            the height of the board on which the game will be played
+     * @param numberOfMines
+     *            the number of mines hidden in the board
+     * @param seed
+     *            the seed used to hide the mines
+     */
+    public GameController(int width, int height, int numberOfMines, long seed) {
+        this(new GameModel(width, height, numberOfMines, seed));
+    }
+
+    /**
+     * Constructor used for resuming a saved game. It creates the game's view
+     * on the given model
+     * 
+     * @param gameModel
+     *            the model of the game, as loaded by <b>GameSnapshot</b>
+     */
+    public GameController(GameModel gameModel) {
+        this.gameModel = gameModel;
+        gameEngine = new GameEngine(gameModel);
+        gameEngine.setUndoBudget(UNDO_BUDGET_BYTES);
+        gameEngine.setParallelReveal(Runtime.getRuntime().availableProcessors() > 1);
+        probabilityEngine = new ProbabilityEngine(gameModel);
         gameView = new GameView(gameModel, this);
     }
 
@@ -46,29 +83,155 @@ public class GameController implements ActionListener {
      *            the ActionEvent
      */
     public void actionPerformed(ActionEvent e) {
-        if(e.getSource() instanceof DotButton) {
-            DotButton dot = (DotButton) e.getSource();
-            play(dot.getColumn(), dot.getRow());
-        } else {
-            switch (e.getActionCommand()) {
-                case GameView.QUIT:
-                    System.exit(0);
-                    break;
-                case GameView.RESET:
-                    reset();
-                    break;
-                default:
+        switch (e.getActionCommand()) {
+            case GameView.QUIT:
+                System.exit(0);
+                break;
+            case GameView.RESET:
+                reset();
+                break;
+            case GameView.HINTS:
+                showProbabilities = !showProbabilities;
+                updateProbabilities();
+                break;
+            case GameView.UNDO:
+                undo(MoveJournal.UNDO);
+                break;
+            case GameView.REDO:
+                undo(MoveJournal.REDO);
+                break;
+            case GameView.SAVE:
+                save();
+                break;
+            default:
+        }
+    }
+
+    /**
+     * Enables or disables the no-guess mode of the following games
+     *
+     * @param budgetMillis
+     *            the maximum time spent looking for a board that can be
+     *            solved without guessing, or 0 to disable the mode
+     */
+    public void setNoGuess(long budgetMillis) {
+        gameEngine.setNoGuess(budgetMillis);
+    }
+
+    /**
+     * Getter method for the model of the game
+     *
+     * @return the model
+     */
+    public GameModel getModel() {
+        return gameModel;
+    }
+
+    /**
+     * Records the following actions in a journal
+     *
+     * @param journal
+     *            the journal, or null to stop recording
+     */
+    public void setJournal(MoveJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Callback used when the user clicks a dot of the board
+     *
+     * @param row
+     *            the selected line
+     * @param column
+     *            the selected column
+     */
+    public void select(int row, int column) {
+        play(column, row);
+    }
+
+    /**
+     * Callback used when the user flags or unflags a dot of the board
+     *
+     * @param row
+     *            the selected line
+     * @param column
+     *            the selected column
+     */
+    public void flag(int row, int column) {
+        if (gameEngine.toggleFlag(row, column) == GameEngine.Outcome.IGNORED) {
+            return;
+        }
+        if (journal != null) {
+            try {
+                journal.record(MoveJournal.FLAG, row, column);
+            } catch (IOException e) {
+                journalFailed(e);
             }
         }
+        gameView.update();
+        updateProbabilities();
     }
 
     /**
      * resets the game
      */
     private void reset(){
-        firstClicked = true;
-        gameModel.reset();
+        gameEngine.reset();
+        if (journal != null) {
+            try {
+                journal.recordReset();
+            } catch (IOException e) {
+                journalFailed(e);
+            }
+        }
+        gameView.update();
+        updateProbabilities();
+    }
+
+    /**
+     * undoes or redoes the last move
+     *
+     * @param action
+     *            MoveJournal.UNDO or MoveJournal.REDO
+     */
+    private void undo(int action){
+        boolean done = action == MoveJournal.UNDO ? gameEngine.undo() : gameEngine.redo();
+        if (!done) {
+            return;
+        }
+        if (journal != null) {
+            try {
+                journal.recordUndo(action);
+            } catch (IOException e) {
+                journalFailed(e);
+            }
+        }
         gameView.update();
+        updateProbabilities();
+    }
+
+    /**
+     * asks for a file, and saves the game in it
+     */
+    private void save(){
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showSaveDialog(gameView) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(chooser.getSelectedFile().toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            GameSnapshot.save(gameModel, channel);
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(gameView, "Cannot save the game: " + e.getMessage());
+        }
+    }
+
+    /**
+     * recomputes the heatmap of the view, if it is shown
+     */
+    private void updateProbabilities(){
+        gameView.setProbabilities(showProbabilities ? probabilityEngine.compute() : null);
     }
 
     /**
@@ -76,6 +239,8 @@ public class GameController implements ActionListener {
      * If that square is not already clicked, then it applies the logic
      * of the game to uncover that square, and possibly end the game if
      * that square was mined, or possibly uncover some other squares. 
+     * If that square is an uncovered number with as many flags around it,
+     * its other neighboors are uncovered (chord).
      * It then checks if the game
      * is finished, and if so, congratulates the player, showing the number of
      * moves, and gives to options: start a new game, or exit
@@ -85,58 +250,34 @@ public class GameController implements ActionListener {
      *            the selected line
      */
     private void play(int width, int heigth){
-        DotInfo dot = gameModel.get(heigth, width);
-        if(dot.hasBeenClicked()) return;
-
-        dot.click();
-        gameModel.step();
-
-        if(firstClicked) {
-            dot.uncover();
-            addMines();
-            firstClicked = false;
-            clearZone(dot);
-            gameView.update();
-        } else if(dot.isMined()) {
-            openAllMined();
-            gameView.update();
-            endDialog(0);
-        } else {
-            dot.uncover();
-            clearZone(dot);
-            gameView.update();
-            if (gameModel.isFinished()) {
-                endDialog(1);
+        boolean chord = !gameModel.isCovered(heigth, width);
+        GameEngine.Outcome outcome = chord ? gameEngine.chord(heigth, width)
+                : gameEngine.reveal(heigth, width);
+        if (journal != null) {
+            try {
+                journal.record(chord ? MoveJournal.CHORD : MoveJournal.REVEAL, heigth, width);
+            } catch (IOException e) {
+                journalFailed(e);
             }
         }
-
+        if (outcome == GameEngine.Outcome.IGNORED) {
+            return;
+        }
+        gameView.update();
+        updateProbabilities();
+        if (outcome == GameEngine.Outcome.MINE) {
+            endDialog(0);
+        } else if (outcome == GameEngine.Outcome.WON) {
+            endDialog(1);
+        }
     }
 
-   /**
-     * <b>clearZone</b> is the method that computes which new dots should be ``uncovered'' 
-     * when a new square with no mine in its neighborood has been selected
-     * @param initialDot
-     *      the DotInfo object corresponding to the selected DotButton that
-     * had zero neighbouring mines
+    /**
+     * stops recording after the journal could not be written
      */
-    private void clearZone(DotInfo initialDot) {
-        GenericArrayStack<DotInfo> stack = new GenericArrayStack<DotInfo>(gameModel.getHeigth() * gameModel.getWidth());
-        stack.push(initialDot);
-
-        while (!stack.isEmpty()) {
-            DotInfo dot = stack.pop();
-            GenericArrayStack<DotInfo> neighbors = getNeighbors(dot);
-
-            while (!neighbors.isEmpty()) {
-                DotInfo n = neighbors.pop();
-                if(n.isCovered() && !n.isMined()) {
-                    n.uncover();
-                    if(n.getNeighbooringMines() == 0) {
-                        stack.push(n);
-                    }
-                }
-            }
-        }
+    private void journalFailed(IOException e){
+        System.out.println(TAG + ": cannot write the journal, recording stopped: " + e.getMessage());
+        journal = null;
     }
 
     private void endDialog(int i) {
@@ -171,131 +312,4 @@ public class GameController implements ActionListener {
         }
     }
 
-    private void addMines() {
-        for (int i = 0; i < gameModel.getNumberOfMines(); i++) {
-            mineDot();
-        }
-
-        for (int i = 0; i < gameModel.getHeigth(); i++) {
-            for (int j = 0; j < gameModel.getWidth(); j++) {
-                DotInfo dot = gameModel.get(i, j);
-                dot.setNeighbooringMines(getNeighborMinesSize(dot));
-            }
-        }
-    }
-
-    private void mineDot() {
-        Random rand = new Random();
-        int i = rand.nextInt(gameModel.getHeigth());
-        int j = rand.nextInt(gameModel.getWidth());
-        DotInfo dot = gameModel.get(i, j);
-
-        if(dot.isMined() || !dot.isCovered()){
-            mineDot();
-        } else {
-            dot.setMined();
-            //dot.uncover();
-        }
-
-    }
-
-    private void openAllMined() {
-        for (int i = 0; i < gameModel.getHeigth(); i++) {
-            for (int j = 0; j < gameModel.getWidth(); j++) {
-                DotInfo dot = gameModel.get(i, j);
-                if(dot.isMined()) {
-                    dot.uncover();
-                }
-            }
-        }
-    }
-
-    private GenericArrayStack<DotInfo> getNeighbors(DotInfo dot) {
-        GenericArrayStack<DotInfo> stack = new GenericArrayStack<DotInfo>(9);
-        int x = dot.getX();
-        int y = dot.getY();
-
-        int x1 = x-1;
-        int x2 = x+1;
-        int y1 = y-1;
-        int y2 = y+1;
-
-        if(validateIndex(x1, y1)) {
-            stack.push(gameModel.get(x1, y1));
-        }
-        if(validateIndex(x, y1)) {
-            stack.push(gameModel.get(x, y1));
-        }
-        if(validateIndex(x2, y1)) {
-            stack.push(gameModel.get(x2, y1));
-        }
-        if(validateIndex(x1, y)) {
-            stack.push(gameModel.get(x1, y));
-        }
-        if(validateIndex(x2, y)) {
-            stack.push(gameModel.get(x2, y));
-        }
-        if(validateIndex(x1, y2)) {
-            stack.push(gameModel.get(x1, y2));
-        }
-        if(validateIndex(x, y2)) {
-            stack.push(gameModel.get(x, y2));
-        }
-        if(validateIndex(x2, y2)) {
-            stack.push(gameModel.get(x2, y2));
-        }
-
-        return stack;
-    }
-
-    private int getNeighborMinesSize(DotInfo dot) {
-        int x = dot.getX();
-        int y = dot.getY();
-        int size = 0;
-
-        int x1 = x-1;
-        int x2 = x+1;
-        int y1 = y-1;
-        int y2 = y+1;
-
-        if(validateIndex(x1, y1) && gameModel.get(x1, y1).isMined()) {
-            size++;
-        }
-        if(validateIndex(x, y1) && gameModel.get(x, y1).isMined()) {
-            size++;
-        }
-        if(validateIndex(x2, y1) && gameModel.get(x2, y1).isMined()) {
-            size++;
-        }
-        if(validateIndex(x1, y) && gameModel.get(x1, y).isMined()) {
-            size++;
-        }
-        if(validateIndex(x2, y) && gameModel.get(x2, y).isMined()) {
-            size++;
-        }
-        if(validateIndex(x1, y2) && gameModel.get(x1, y2).isMined()) {
-            size++;
-        }
-        if(validateIndex(x, y2) && gameModel.get(x, y2).isMined()) {
-            size++;
-        }
-        if(validateIndex(x2, y2) && gameModel.get(x2, y2).isMined()) {
-            size++;
-        }
-
-        return size;
-    }
-
-    private boolean validateIndex(int x, int y) {
-        int h = gameModel.getHeigth();
-        int w = gameModel.getWidth();
-
-        if(x < 0 || x >= h){
-            return false;
-        } else if(y < 0 || y >= w) {
-            return false;
-        }
-        return true;
-    }
-
 }
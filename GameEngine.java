@@ -0,0 +1,469 @@
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The class <b>GameEngine</b> holds the rules of the game, independently of
+ * any user interface: first click, mine hit, clearing of zones and win
+ * detection. It wraps a <b>GameModel</b> and is used by the
+ * <b>GameController</b> as well as by simulations and benchmarks.
+ */
+
+public class GameEngine {
+
+    /**
+     * The possible outcomes of a move
+     */
+    public enum Outcome {
+        /** the move had no effect (dot already clicked, or game over) */
+        IGNORED,
+        /** a safe dot was uncovered, the game goes on */
+        SAFE,
+        /** a mine was hit, the game is lost */
+        MINE,
+        /** the last safe dot was uncovered, the game is won */
+        WON,
+        /** a flag was added or removed, the game goes on */
+        FLAGGED
+    }
+
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    private static final int REVEAL = 0;
+    private static final int FLAG = 1;
+    private static final int CHORD = 2;
+
+    private GameModel gameModel;
+    private FloodFill floodFill;
+    private MinePlacer minePlacer;
+    private boolean firstClicked;
+    private boolean over;
+    private int lastUncovered;
+    private boolean safeOpening;
+    private long noGuessBudgetMillis;
+    private NoGuessGenerator noGuessGenerator;
+    private MoveHistory history;
+    private long nextSeed;
+    private int[] nextExcluded;
+
+    /**
+     * Constructor used for initializing the engine of a model, which may 
+     * hold a game that has not started yet, or a game in progress
+     *
+     * @param gameModel
+     *            the model of the game
+     */
+    public GameEngine(GameModel gameModel) {
+        this.gameModel = gameModel;
+        this.floodFill = new FloodFill(gameModel);
+        this.minePlacer = new MinePlacer();
+        resume();
+    }
+
+    /**
+     * Enables or disables the parallel reveal: once a flood fill has
+     * uncovered PARALLEL_THRESHOLD dots, the rest of it is run by a
+     * <b>ParallelFloodFill</b> on the common pool. The dots uncovered are
+     * the same either way.
+     *
+     * @param parallelReveal
+     *            true to enable the parallel reveal
+     */
+    public void setParallelReveal(boolean parallelReveal) {
+        floodFill.setParallel(parallelReveal ? new ParallelFloodFill(gameModel, ForkJoinPool.commonPool()) : null,
+                PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * Enables or disables <b>undo</b> and <b>redo</b>. The moves are recorded
+     * from now on.
+     *
+     * @param budgetBytes
+     *            the maximum memory used to record the moves, or 0 to
+     *            disable undo
+     */
+    public void setUndoBudget(long budgetBytes) {
+        history = budgetBytes > 0 ? new MoveHistory(budgetBytes) : null;
+        gameModel.setHistory(history);
+    }
+
+    /**
+     * Getter method for the model of the game
+     *
+     * @return the model
+     */
+    public GameModel getModel() {
+        return this.gameModel;
+    }
+
+    /**
+     * When set, the first click always selects a dot with no neighbooring
+     * mine: its eight neighboors are kept free of mines too
+     *
+     * @param safeOpening
+     *            true to open a region at the first click
+     */
+    public void setSafeOpening(boolean safeOpening) {
+        this.safeOpening = safeOpening;
+    }
+
+    /**
+     * Enables or disables the no-guess mode: the mines are hidden so that
+     * the whole board can be solved from the first click without guessing.
+     * Implies a safe opening.
+     *
+     * @param budgetMillis
+     *            the maximum time spent looking for a board at the first
+     *            click, or 0 to disable the no-guess mode
+     */
+    public void setNoGuess(long budgetMillis) {
+        this.noGuessBudgetMillis = budgetMillis;
+        if (budgetMillis > 0) {
+            this.safeOpening = true;
+            this.noGuessGenerator = new NoGuessGenerator(gameModel.getWidth(), gameModel.getHeigth(),
+                    gameModel.getNumberOfMines());
+        }
+    }
+
+    /**
+     * Sets how the mines of the next first click are hidden, as recorded by
+     * a <b>MoveJournal</b>: with the given seed, away from the given dots,
+     * whatever the dot selected and the mode of the engine. Used to replay
+     * the games of a journal.
+     *
+     * @param seed
+     *            the seed the mines were hidden with
+     * @param excluded
+     *            the sorted indices of the dots kept free of mines
+     */
+    void setNextPlacement(long seed, int[] excluded) {
+        this.nextSeed = seed;
+        this.nextExcluded = excluded;
+    }
+
+    /**
+     * resets the game, with the next seed of the model
+     */
+    public void reset() {
+        gameModel.reset();
+        restart();
+    }
+
+    /**
+     * resets the game, with a given seed
+     *
+     * @param seed
+     *            the seed of the new game
+     */
+    public void reset(long seed) {
+        gameModel.reset(seed);
+        restart();
+    }
+
+    private void restart() {
+        firstClicked = true;
+        over = false;
+        lastUncovered = 0;
+        if (history != null) {
+            history.clear();
+        }
+    }
+
+    private void resume() {
+        firstClicked = gameModel.getNumberOfSteps() == 0;
+        over = !firstClicked && (gameModel.isFinished() || gameModel.hasUncoveredMine());
+        lastUncovered = 0;
+    }
+
+    /**
+     * Returns true if a move can be undone
+     *
+     * @return true if undo is enabled and a move was recorded
+     */
+    public boolean canUndo() {
+        return history != null && history.canUndo();
+    }
+
+    /**
+     * Returns true if a move can be redone
+     *
+     * @return true if undo is enabled and a move was undone
+     */
+    public boolean canRedo() {
+        return history != null && history.canRedo();
+    }
+
+    /**
+     * Undoes the last move, in time proportional to the number of dots
+     * it changed. Undoing the first move gives back a board with no mine.
+     *
+     * @return false if there was no move to undo
+     */
+    public boolean undo() {
+        if (!canUndo()) {
+            return false;
+        }
+        history.undo(gameModel);
+        resume();
+        return true;
+    }
+
+    /**
+     * Redoes the last move undone
+     *
+     * @return false if there was no move to redo
+     */
+    public boolean redo() {
+        if (!canRedo()) {
+            return false;
+        }
+        history.redo(gameModel);
+        resume();
+        return true;
+    }
+
+    /**
+     * Returns true if no dot has been selected since the last reset
+     *
+     * @return true before the first move
+     */
+    public boolean isFirstMove() {
+        return this.firstClicked;
+    }
+
+    /**
+     * Returns true once the game is lost or won
+     *
+     * @return true if the game is over
+     */
+    public boolean isOver() {
+        return this.over;
+    }
+
+    /**
+     * Returns the number of dots uncovered by the last move
+     *
+     * @return the number of dots uncovered by the last call to <b>reveal</b>
+     */
+    public int getLastUncovered() {
+        return this.lastUncovered;
+    }
+
+    /**
+     * <b>reveal</b> applies the logic of the game when a square is selected.
+     * If that square is not already clicked, it uncovers that square, and 
+     * possibly ends the game if that square was mined, or possibly uncovers
+     * some other squares. The mines are hidden at the first move, away from
+     * the selected square.
+     *
+     * @param row
+     *            the selected line
+     * @param column
+     *            the selected column
+     * @return the outcome of the move
+     */
+    public Outcome reveal(int row, int column) {
+        lastUncovered = 0;
+        if (over || gameModel.hasBeenClicked(row, column) || gameModel.isFlagged(row, column)) {
+            return Outcome.IGNORED;
+        }
+        return apply(REVEAL, row, column);
+    }
+
+    /**
+     * Adds a flag on a covered dot, or removes it. Flagged dots cannot be
+     * selected, and are never uncovered by the flood fill.
+     *
+     * @param row
+     *            the selected line
+     * @param column
+     *            the selected column
+     * @return FLAGGED, or IGNORED if the dot is uncovered or the game is over
+     */
+    public Outcome toggleFlag(int row, int column) {
+        lastUncovered = 0;
+        if (over || !gameModel.isCovered(row, column)) {
+            return Outcome.IGNORED;
+        }
+        return apply(FLAG, row, column);
+    }
+
+    /**
+     * Chords on an uncovered number: if it has as many flagged neighboors
+     * as neighbooring mines, all its other covered neighboors are revealed,
+     * as if each had been selected. Checking the flags costs O(1), thanks to
+     * the counters of the model. The move is lost if a flag was wrong.
+     *
+     * @param row
+     *            the selected line
+     * @param column
+     *            the selected column
+     * @return the outcome of the move, IGNORED if the dot cannot be chorded
+     */
+    public Outcome chord(int row, int column) {
+        lastUncovered = 0;
+        if (over || gameModel.isCovered(row, column) || gameModel.isMined(row, column)) {
+            return Outcome.IGNORED;
+        }
+        int mines = gameModel.getNeighbooringMines(row, column);
+        if (mines == 0 || gameModel.getNeighbooringFlags(row, column) != mines) {
+            return Outcome.IGNORED;
+        }
+        return apply(CHORD, row, column);
+    }
+
+    /**
+     * Applies a move, recording it in the history if undo is enabled
+     */
+    private Outcome apply(int move, int row, int column) {
+        long start = System.nanoTime();
+        Metrics.MoveEvent event = Metrics.beginMove();
+        if (history != null) {
+            history.begin(gameModel.getNumberOfSteps());
+        }
+        try {
+            switch (move) {
+                case FLAG:
+                    gameModel.toggleFlag(row, column);
+                    return Outcome.FLAGGED;
+                case CHORD:
+                    return playChord(row, column);
+                default:
+                    return play(row, column);
+            }
+        } finally {
+            if (history != null) {
+                history.end(gameModel.getNumberOfSteps());
+            }
+            Metrics.MOVES.record(System.nanoTime() - start);
+            if (event != null && event.shouldCommit()) {
+                event.moveIndex = gameModel.getNumberOfSteps();
+                event.boardSize = gameModel.getWidth() * gameModel.getHeigth();
+                event.action = move == FLAG ? "flag" : move == CHORD ? "chord" : "reveal";
+                event.uncovered = lastUncovered;
+                event.commit();
+            }
+        }
+    }
+
+    private Outcome playChord(int row, int column) {
+        int width = gameModel.getWidth();
+        int heigth = gameModel.getHeigth();
+        boolean exploded = false;
+        boolean changed = false;
+        for (int x = Math.max(row - 1, 0); x <= Math.min(row + 1, heigth - 1); x++) {
+            for (int y = Math.max(column - 1, 0); y <= Math.min(column + 1, width - 1); y++) {
+                if (!gameModel.isCovered(x, y) || gameModel.isFlagged(x, y)) {
+                    continue;
+                }
+                if (!changed) {
+                    changed = true;
+                    gameModel.step();
+                }
+                if (gameModel.isMined(x, y)) {
+                    gameModel.markClicked(x, y);
+                    exploded = true;
+                } else {
+                    gameModel.uncover(x, y);
+                    lastUncovered += 1 + floodFill.clearZone(x, y);
+                }
+            }
+        }
+        if (!changed) {
+            return Outcome.IGNORED;
+        }
+        if (exploded) {
+            openAllMined();
+            over = true;
+            return Outcome.MINE;
+        }
+        if (gameModel.isFinished()) {
+            over = true;
+            return Outcome.WON;
+        }
+        return Outcome.SAFE;
+    }
+
+    private Outcome play(int row, int column) {
+        gameModel.click(row, column);
+
+        if (firstClicked) {
+            firstClicked = false;
+            gameModel.uncover(row, column);
+            addMines(row, column);
+        } else if (gameModel.isMined(row, column)) {
+            openAllMined();
+            over = true;
+            return Outcome.MINE;
+        } else {
+            gameModel.uncover(row, column);
+        }
+        lastUncovered = 1 + floodFill.clearZone(row, column);
+        if (gameModel.isFinished()) {
+            over = true;
+            return Outcome.WON;
+        }
+        return Outcome.SAFE;
+    }
+
+    private void addMines(int firstRow, int firstColumn) {
+        long start = System.nanoTime();
+        Metrics.MineGenerationEvent event = Metrics.beginMineGeneration();
+        int[] excluded;
+        if (nextExcluded != null) {
+            gameModel.setSeed(nextSeed);
+            excluded = nextExcluded;
+            nextExcluded = null;
+        } else {
+            if (noGuessBudgetMillis > 0) {
+                gameModel.setSeed(noGuessGenerator.find(gameModel.getSeed(), firstRow, firstColumn,
+                        noGuessBudgetMillis));
+            }
+            excluded = excludedDots(firstRow, firstColumn);
+        }
+        minePlacer.placeMines(gameModel, gameModel.getSeed(), excluded);
+        gameModel.setExcludedDots(excluded);
+        Metrics.MINE_GENERATION.record(System.nanoTime() - start);
+        if (event != null && event.shouldCommit()) {
+            event.boardSize = gameModel.getWidth() * gameModel.getHeigth();
+            event.numberOfMines = gameModel.getNumberOfMines();
+            event.noGuess = noGuessBudgetMillis > 0;
+            event.commit();
+        }
+    }
+
+    /**
+     * Returns the sorted indices of the dots kept free of mines at the first
+     * click: the dot itself, and its neighboors for a safe opening if there
+     * are enough dots left for all the mines
+     */
+    private int[] excludedDots(int row, int column) {
+        int width = gameModel.getWidth();
+        int heigth = gameModel.getHeigth();
+        if (!safeOpening) {
+            return new int[] {gameModel.index(row, column)};
+        }
+        int fromX = Math.max(row - 1, 0);
+        int toX = Math.min(row + 1, heigth - 1);
+        int fromY = Math.max(column - 1, 0);
+        int toY = Math.min(column + 1, width - 1);
+        int[] excluded = new int[(toX - fromX + 1) * (toY - fromY + 1)];
+        if (width * heigth - excluded.length < gameModel.getNumberOfMines()) {
+            return new int[] {gameModel.index(row, column)};
+        }
+        int k = 0;
+        for (int x = fromX; x <= toX; x++) {
+            for (int y = fromY; y <= toY; y++) {
+                excluded[k++] = gameModel.index(x, y);
+            }
+        }
+        return excluded;
+    }
+
+    private void openAllMined() {
+        int size = gameModel.getWidth() * gameModel.getHeigth();
+        for (int index = 0; index < size; index++) {
+            if ((gameModel.cell(index) & CellStore.MINED) != 0) {
+                gameModel.uncoverCell(index);
+            }
+        }
+    }
+}
@@ -21,11 +21,33 @@ public class GameModel {
     private int widthOfGame;
     private int heigthOfGame;
     private int numberOfMines;
-    private DotInfo[][] model;
+    private CellStore model;
     private int numberUncovered;
+    private int numberUncoveredSafe;
+    private int numberOfMinesPlaced;
+    private int numberOfFlags;
     private int numberOfSteps;
+    private long seed;
+    private int[] excludedDots;
+    private MoveHistory history;
+    // number of flagged neighboors of each dot, allocated through the
+    // storage of the board at the first flag
+    private CellStore adjacentFlags;
+    private int[] dirty;
+    private int dirtyCount;
+    private boolean allDirty;
     private String TAG = GameModel.class.getSimpleName();
 
+    /**
+     * When the system property <code>minesweeper.debug</code> is set to true,
+     * the counters are checked against a full scan of the board every time
+     * <b>isFinished</b> is called.
+     */
+    static final boolean DEBUG = Boolean.getBoolean("minesweeper.debug");
+
+    private static final int MAX_DIRTY = 1 << 20;
+    private static final int VISIBLE = CellStore.UNCOVERED | CellStore.CLICKED | CellStore.FLAGGED;
+
     /**
      * Constructor to initialize the model to a given size of board.
      * 
@@ -39,25 +61,203 @@ public class GameModel {
      *            the number of mines to hide in the board
      */
     public GameModel(int width, int heigth, int numberOfMines) {
-        this.random = new Random();
+        this(width, heigth, numberOfMines, new Random().nextLong());
+    }
+
+    /**
+     * Constructor to initialize the model to a given size of board, with
+     * a given seed. Two models built with the same seed generate the same
+     * sequence of boards.
+     * 
+     * @param width
+     *            the width of the board
+     * 
+     * @param heigth
+     *            the heigth of the board
+     * 
+     * @param numberOfMines
+     *            the number of mines to hide in the board
+     *
+     * @param seed
+     *            the seed of the first game
+     */
+    public GameModel(int width, int heigth, int numberOfMines, long seed) {
+        this(width, heigth, numberOfMines, seed, new ByteCellStore(numberOfDots(width, heigth)));
+    }
+
+    /**
+     * Constructor to initialize the model on a given board storage, which
+     * must hold width * heigth cleared cells.
+     * 
+     * @param width
+     *            the width of the board
+     * 
+     * @param heigth
+     *            the heigth of the board
+     * 
+     * @param numberOfMines
+     *            the number of mines to hide in the board
+     *
+     * @param seed
+     *            the seed of the first game
+     *
+     * @param store
+     *            the storage of the board
+     */
+    public GameModel(int width, int heigth, int numberOfMines, long seed, CellStore store) {
+        if (store.size() != numberOfDots(width, heigth)) {
+            throw new IllegalArgumentException(TAG + ": a " + width + "x" + heigth
+                    + " board needs " + width * heigth + " cells, store has " + store.size());
+        }
+        this.random = new Random(seed);
+        this.seed = seed;
         this.widthOfGame = width;
         this.heigthOfGame = heigth;
         this.numberOfMines = numberOfMines;
-        this.model = new DotInfo[heigth][width];
-        this.numberUncovered = 0;
+        this.model = store;
         this.numberOfSteps = 0;
-        initButtons();
+        this.dirty = new int[64];
+        resetCounters();
+    }
+
+    /**
+     * Returns the number of dots of a board. Dots are indexed by an int
+     * (see <b>index</b>), so a board holds at most Integer.MAX_VALUE dots,
+     * e.g. 46340 x 46340.
+     * 
+     * @param width
+     *            the width of the board
+     * @param heigth
+     *            the heigth of the board
+     * @return width * heigth
+     * @throws IllegalArgumentException if the board is empty or too large
+     */
+    public static int numberOfDots(int width, int heigth) {
+        long dots = (long) width * heigth;
+        if (width <= 0 || heigth <= 0 || dots > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(GameModel.class.getSimpleName() + ": a " + width + "x"
+                    + heigth + " board cannot be indexed by an int");
+        }
+        return (int) dots;
+    }
+
+    /**
+     * Reopens a game saved in a memory mapped board. The board is used in
+     * place: nothing is read but the header of the file, unless the game 
+     * was not closed properly, in which case the counters are rebuilt.
+     * 
+     * @param store
+     *            the mapped board, as returned by <b>MappedCellStore.open</b>
+     * @return the model of the saved game
+     */
+    public static GameModel open(MappedCellStore store) {
+        GameModel gameModel = new GameModel(store.getWidth(), store.getHeigth(),
+                store.getNumberOfMines(), store.getSeed(), store);
+        gameModel.numberOfSteps = store.getNumberOfSteps();
+        if (store.isClean()) {
+            gameModel.numberUncovered = store.getNumberUncovered();
+            gameModel.numberUncoveredSafe = store.getNumberUncoveredSafe();
+            gameModel.numberOfMinesPlaced = store.getNumberOfMinesPlaced();
+            gameModel.numberOfFlags = store.getNumberOfFlags();
+        } else {
+            gameModel.recount();
+        }
+        if (gameModel.numberOfFlags > 0) {
+            gameModel.recountFlags();
+        }
+        gameModel.markAllDirty();
+        return gameModel;
+    }
+
+    /**
+     * Returns a copy of the current game, in a store of the same kind as the
+     * board (see <b>CellStore.companion</b>), e.g. to save it on another
+     * thread while this one goes on. The copy has no history, no flag
+     * counters and no changed dots.
+     * 
+     * @return the copy of the game
+     */
+    GameModel copy(){
+        CellStore store = model.companion();
+        for (int index = 0; index < model.size(); index++) {
+            store.set(index, model.get(index));
+        }
+        GameModel copy = new GameModel(widthOfGame, heigthOfGame, numberOfMines, seed, store);
+        copy.excludedDots = excludedDots;
+        copy.numberOfSteps = numberOfSteps;
+        copy.numberUncovered = numberUncovered;
+        copy.numberUncoveredSafe = numberUncoveredSafe;
+        copy.numberOfMinesPlaced = numberOfMinesPlaced;
+        copy.numberOfFlags = numberOfFlags;
+        return copy;
     }
 
     /**
      * Resets the model to (re)start a game. The previous game (if there is one)
-     * is cleared up . 
+     * is cleared up . The board is cleared in place, nothing is reallocated.
      */
     public void reset(){
-      this.model = new DotInfo[this.heigthOfGame][this.widthOfGame];
+      reset(this.random.nextLong());
+    }
+
+    /**
+     * Resets the model to (re)start a game with a given seed. The previous
+     * game (if there is one) is cleared up . The board is cleared in place.
+     *
+     * @param seed
+     *            the seed of the new game
+     */
+    public void reset(long seed){
+      this.model.clear();
+      this.seed = seed;
+      this.excludedDots = null;
+      if (this.adjacentFlags != null) {
+        this.adjacentFlags.clear();
+      }
       this.numberOfSteps = 0;
-      this.numberUncovered = 0;
-      initButtons();
+      resetCounters();
+      markAllDirty();
+    }
+
+    /**
+     * Getter method for the seed of the current game
+     * 
+     * @return the seed used to hide the mines of the current game
+     */   
+    public long getSeed(){
+        return this.seed;
+    }
+
+    /**
+     * Replaces the seed of the current game, before its mines are hidden
+     * 
+     * @param seed
+     *            the seed used to hide the mines of the current game
+     */   
+    void setSeed(long seed){
+        this.seed = seed;
+    }
+
+    /**
+     * Records that the mines of the current game were hidden by 
+     * <b>MinePlacer</b>, with the seed of the game, away from given dots
+     * 
+     * @param excludedDots
+     *            the sorted indices of the dots kept free of mines
+     */   
+    void setExcludedDots(int[] excludedDots){
+        this.excludedDots = excludedDots;
+    }
+
+    /**
+     * Returns the dots kept free of mines when the mines of the current game
+     * were hidden, or null if the mines cannot be rebuilt from the seed
+     * (not hidden yet, or changed since)
+     * 
+     * @return the sorted indices of the excluded dots, or null
+     */   
+    int[] getExcludedDots(){
+        return this.excludedDots;
     }
 
     /**
@@ -88,7 +288,7 @@ public class GameModel {
      * @return the status of the dot at location (i,j)
      */   
     public boolean isMined(int i, int j){
-        return this.model[i][j].isMined();
+        return (cell(index(i, j)) & CellStore.MINED) != 0;
     }
 
     /**
@@ -102,7 +302,7 @@ public class GameModel {
      * @return the status of the dot at location (i,j)
      */   
     public boolean hasBeenClicked(int i, int j){
-        return this.model[i][j].hasBeenClicked();
+        return (cell(index(i, j)) & CellStore.CLICKED) != 0;
     }
 
   /**
@@ -117,11 +317,7 @@ public class GameModel {
      */   
     public boolean isBlank(int i, int j){
         
-      if(this.model[i][j].getNeighbooringMines() == 0){
-        return true;
-      }
-
-      return false;
+      return (cell(index(i, j)) & CellStore.COUNT_MASK) == 0;
 
     }
 
@@ -136,7 +332,7 @@ public class GameModel {
      */   
     public boolean isCovered(int i, int j){
         
-      return this.model[i][j].isCovered();
+      return (cell(index(i, j)) & CellStore.UNCOVERED) == 0;
 
     }
 
@@ -151,7 +347,7 @@ public class GameModel {
      * @return the number of neighbooring mines at location (i,j)
      */   
     public int getNeighbooringMines(int i, int j){
-      return get(i, j).getNeighbooringMines();
+      return cell(index(i, j)) & CellStore.COUNT_MASK;
     }
 
 
@@ -164,8 +360,17 @@ public class GameModel {
      *            the y coordinate of the dot
      */   
     public void uncover(int i, int j){
-      this.model[i][j].uncover();
-      this.numberUncovered++;
+      uncoverCell(index(i, j));
+    }
+
+    /**
+     * Sets the status of the dot at the given index to uncovered
+     * 
+     * @param index
+     *            the index of the dot, as returned by <b>index</b>
+     */   
+    void uncoverCell(int index){
+      write(index, cell(index) | CellStore.UNCOVERED);
     }
 
     /**
@@ -177,8 +382,8 @@ public class GameModel {
      *            the y coordinate of the dot
      */   
     public void click(int i, int j){
-        if (!get(i, j).hasBeenClicked()){
-          get(i, j).click();
+        if (!hasBeenClicked(i, j)){
+          markClicked(i, j);
           step();
         }
     }
@@ -189,7 +394,7 @@ public class GameModel {
     public void uncoverAll(){
         for (int i = 0; i < heigthOfGame; i++){
             for (int j = 0; j < widthOfGame; j++) {
-                get(i, j).uncover();
+                uncover(i, j);
             }
         }
     }
@@ -204,18 +409,288 @@ public class GameModel {
     }
 
     /**
-     * Getter method for the model's dotInfo reference
-     * at location (i,j)
+     * Returns a lightweight <b>DotInfo</b> view of the dot
+     * at location (i,j). The view holds no state of its own: it reads
+     * and writes the board of this model.
      *
       * @param i
      *            the x coordinate of the dot
      * @param j
      *            the y coordinate of the dot
      *
-     * @return model[i][j]
+     * @return a view of the dot at location (i,j)
      */   
     public DotInfo get(int i, int j) {
-      return this.model[i][j];
+      return new DotInfo(this, i, j);
+    }
+
+    /**
+     * Sets the dot at location (i,j) as clicked, without counting a step
+     * 
+     * @param i
+     *            the x coordinate of the dot
+     * @param j
+     *            the y coordinate of the dot
+     */   
+    public void markClicked(int i, int j){
+      int index = index(i, j);
+      write(index, cell(index) | CellStore.CLICKED);
+    }
+
+    /**
+     * Adds a flag on the dot at location (i,j), or removes it. Uncovered
+     * dots cannot be flagged. The number of neighbooring flags of the
+     * neighboors of the dot is updated.
+     * 
+     * @param i
+     *            the x coordinate of the dot
+     * @param j
+     *            the y coordinate of the dot
+     * @return true if the dot was flagged or unflagged
+     */   
+    public boolean toggleFlag(int i, int j){
+      int index = index(i, j);
+      int value = cell(index);
+      if ((value & CellStore.UNCOVERED) != 0) {
+        return false;
+      }
+      write(index, value ^ CellStore.FLAGGED);
+      return true;
+    }
+
+    /**
+     * Returns true if the dot at location (i,j) is flagged
+     * 
+     * @param i
+     *            the x coordinate of the dot
+     * @param j
+     *            the y coordinate of the dot
+     * @return the status of the dot at location (i,j)
+     */   
+    public boolean isFlagged(int i, int j){
+      return (cell(index(i, j)) & CellStore.FLAGGED) != 0;
+    }
+
+    /**
+     * Getter method for the number of flagged neighboors of the dot at
+     * location (i,j). The number is kept up to date by every flag, so this
+     * does not look at the neighboors.
+     * 
+     * @param i
+     *            the x coordinate of the dot
+     * @param j
+     *            the y coordinate of the dot
+     * @return the number of neighbooring flags of the dot at location (i,j)
+     */   
+    public int getNeighbooringFlags(int i, int j){
+      return adjacentFlags == null ? 0 : adjacentFlags.get(index(i, j));
+    }
+
+    /**
+     * Sets the dot at location (i,j) as mined, and updates the number
+     * of neighbooring mines of its neighboors
+     * 
+     * @param i
+     *            the x coordinate of the dot
+     * @param j
+     *            the y coordinate of the dot
+     */   
+    public void setMined(int i, int j){
+      this.excludedDots = null;
+      mineCell(index(i, j));
+    }
+
+    /**
+     * Flips some bits of the dot at the given index, as recorded by a
+     * <b>MoveHistory</b>. The counters are kept exact.
+     * 
+     * @param index
+     *            the index of the dot, as returned by <b>index</b>
+     * @param xor
+     *            the bits to flip
+     */   
+    void toggle(int index, int xor){
+      write(index, cell(index) ^ xor);
+    }
+
+    /**
+     * Returns true if the changes made to the board are recorded
+     * 
+     * @return true if a history is set
+     */   
+    boolean hasHistory(){
+      return history != null;
+    }
+
+    /**
+     * Returns the storage of the board. Changes written directly to it
+     * (by <b>ParallelFloodFill</b> and <b>ConcurrentBoard</b>) must be
+     * reported to the model
+     * 
+     * @return the storage of the board
+     */   
+    CellStore getStore(){
+      return model;
+    }
+
+    /**
+     * Accounts for safe dots uncovered directly in the storage of the board
+     * by <b>ParallelFloodFill</b>: updates the counters, and the history
+     * and the changed dots when the indices are known
+     * 
+     * @param indices
+     *            the indices of the dots uncovered, or null if they were not
+     *            kept
+     * @param size
+     *            the number of indices
+     * @param count
+     *            the number of dots uncovered
+     */   
+    void uncovered(int[] indices, int size, int count){
+      numberUncovered += count;
+      numberUncoveredSafe += count;
+      if (indices == null || size != count) {
+        markAllDirty();
+        return;
+      }
+      for (int k = 0; k < size; k++) {
+        if (history != null) {
+          history.log(indices[k], CellStore.UNCOVERED);
+        }
+        if (!allDirty) {
+          addDirty(indices[k]);
+        }
+      }
+    }
+
+    /**
+     * Accounts for changes made directly in the storage of the board by
+     * <b>ConcurrentBoard</b>
+     * 
+     * @param uncovered
+     *            the number of dots uncovered
+     * @param uncoveredSafe
+     *            the number of safe dots uncovered
+     * @param flags
+     *            the number of flags added, less the number removed
+     */   
+    void addCounters(int uncovered, int uncoveredSafe, int flags){
+      numberUncovered += uncovered;
+      numberUncoveredSafe += uncoveredSafe;
+      numberOfFlags += flags;
+    }
+
+    /**
+     * Sets the history that records the changes made to the board
+     * 
+     * @param history
+     *            the history, or null to stop recording
+     */   
+    void setHistory(MoveHistory history){
+      this.history = history;
+    }
+
+    /**
+     * Sets the number of steps of a restored game
+     * 
+     * @param numberOfSteps
+     *            the number of steps already played
+     */   
+    void restoreSteps(int numberOfSteps){
+      this.numberOfSteps = numberOfSteps;
+    }
+
+    /**
+     * Sets the dot at the given index as mined, and adds one to the number
+     * of neighbooring mines of each of its neighboors
+     * 
+     * @param index
+     *            the index of the dot, as returned by <b>index</b>
+     */   
+    void mineCell(int index){
+      int value = cell(index);
+      if ((value & CellStore.MINED) == 0) {
+        write(index, value | CellStore.MINED);
+        addToNeighbors(index, 1);
+      }
+    }
+
+    /**
+     * Removes the mine of the dot at the given index, and removes one from
+     * the number of neighbooring mines of each of its neighboors
+     * 
+     * @param index
+     *            the index of the dot, as returned by <b>index</b>
+     */   
+    void unmineCell(int index){
+      int value = cell(index);
+      if ((value & CellStore.MINED) != 0) {
+        write(index, value & ~CellStore.MINED);
+        addToNeighbors(index, -1);
+      }
+    }
+
+    /**
+     * Moves the mine of the dot at location (fromI,fromJ) to the dot at 
+     * location (toI,toJ). The number of neighbooring mines is updated
+     * around both dots only.
+     * 
+     * @param fromI
+     *            the x coordinate of the mined dot
+     * @param fromJ
+     *            the y coordinate of the mined dot
+     * @param toI
+     *            the x coordinate of the new mined dot
+     * @param toJ
+     *            the y coordinate of the new mined dot
+     */   
+    public void moveMine(int fromI, int fromJ, int toI, int toJ){
+      int to = index(toI, toJ);
+      if (isMined(fromI, fromJ) && !isMined(toI, toJ)) {
+        this.excludedDots = null;
+        unmineCell(index(fromI, fromJ));
+        mineCell(to);
+      }
+    }
+
+    /**
+     * Sets the number of neighbooring mines of the dot at location (i,j)
+     * 
+     * @param i
+     *            the x coordinate of the dot
+     * @param j
+     *            the y coordinate of the dot
+     * @param neighbooringMines
+     *            number of neighbooring mines, between 0 and 8
+     */   
+    public void setNeighbooringMines(int i, int j, int neighbooringMines){
+      int index = index(i, j);
+      write(index, (cell(index) & ~CellStore.COUNT_MASK) | neighbooringMines);
+    }
+
+    /**
+     * Returns the index of the dot at location (i,j) in the board storage
+     *
+     * @param i
+     *            the x coordinate of the dot
+     * @param j
+     *            the y coordinate of the dot
+     * @return i * width + j
+     */   
+    public int index(int i, int j){
+      return i * this.widthOfGame + j;
+    }
+
+    /**
+     * Returns the packed state (see <b>CellStore</b>) of the dot
+     * at the given index
+     *
+     * @param index
+     *            the index of the dot, as returned by <b>index</b>
+     * @return the packed state of the dot
+     */   
+    int cell(int index){
+      return this.model.get(index);
     }
 
    /**
@@ -229,23 +704,245 @@ public class GameModel {
     public int getNumberOfMines() {
          return this.numberOfMines;
     }
+
+    /**
+     * Getter method for the number of mines currently hidden in the board
+     * 
+     * @return the number of mined dots
+     */   
+    public int getNumberOfMinesPlaced() {
+         return this.numberOfMinesPlaced;
+    }
+
+    /**
+     * Getter method for the number of uncovered dots, mined or not
+     * 
+     * @return the number of uncovered dots
+     */   
+    public int getNumberUncovered() {
+         return this.numberUncovered;
+    }
+
+    /**
+     * Getter method for the number of uncovered dots that are not mined
+     * 
+     * @return the number of uncovered safe dots
+     */   
+    public int getNumberUncoveredSafe() {
+         return this.numberUncoveredSafe;
+    }
+
+    /**
+     * Getter method for the number of non mined dots still covered
+     * 
+     * @return the number of covered safe dots
+     */   
+    public int getNumberCoveredSafe() {
+         return this.widthOfGame * this.heigthOfGame - this.numberOfMinesPlaced - this.numberUncoveredSafe;
+    }
+
+    /**
+     * Getter method for the number of flagged dots
+     * 
+     * @return the number of flags
+     */   
+    public int getNumberOfFlags() {
+         return this.numberOfFlags;
+    }
  
+   /**
+     * Returns true if every dot may have changed since the last call to
+     * <b>clearDirty</b> (new game, or too many changes to list them)
+     *
+     * @return true if the whole board must be redrawn
+     */
+    public boolean isAllDirty(){
+        return this.allDirty;
+    }
+
+   /**
+     * Returns the number of dots changed since the last call to
+     * <b>clearDirty</b>. Meaningless when <b>isAllDirty</b> is true.
+     *
+     * @return the number of changed dots (a dot may be listed twice)
+     */
+    public int getDirtyCount(){
+        return this.dirtyCount;
+    }
+
+   /**
+     * Returns the index of the k-th dot changed since the last call to
+     * <b>clearDirty</b>
+     *
+     * @param k
+     *            the position in the list of changed dots
+     * @return the index of the changed dot, as returned by <b>index</b>
+     */
+    public int getDirty(int k){
+        return this.dirty[k];
+    }
+
+   /**
+     * Empties the list of changed dots, once they have been redrawn
+     */
+    public void clearDirty(){
+        this.dirtyCount = 0;
+        this.allDirty = false;
+    }
+
+   /**
+     * Marks every dot as changed
+     */
+    public void markAllDirty(){
+        this.dirtyCount = 0;
+        this.allDirty = true;
+    }
+
    /**
      * The metod <b>isFinished</b> returns true iff the game is finished, that
-     * is, all the nonmined dots are uncovered.
+     * is, all the nonmined dots are uncovered. It runs in constant time, 
+     * using the counters maintained by every change of the board.
      *
      * @return true if the game is finished, false otherwise
      */
     public boolean isFinished(){
+        if (DEBUG) {
+            checkCounters();
+        }
+        return getNumberCoveredSafe() == 0;
+    }
+
+   /**
+     * The metod <b>checkCounters</b> recounts the whole board and compares
+     * the result with the maintained counters.
+     *
+     * @throws IllegalStateException if a counter does not match the board
+     */
+    public void checkCounters(){
+        int uncovered = numberUncovered;
+        int uncoveredSafe = numberUncoveredSafe;
+        int mines = numberOfMinesPlaced;
+        int flags = numberOfFlags;
+        recount();
+        if (uncovered != numberUncovered || uncoveredSafe != numberUncoveredSafe
+                || mines != numberOfMinesPlaced || flags != numberOfFlags) {
+            throw new IllegalStateException(TAG + ": counters out of sync, board has "
+                    + numberUncovered + " uncovered, " + numberUncoveredSafe + " uncovered safe, "
+                    + numberOfMinesPlaced + " mines, " + numberOfFlags + " flags; counters said "
+                    + uncovered + ", " + uncoveredSafe + ", " + mines + ", " + flags);
+        }
+    }
+
+   /**
+     * Returns true if a mine has been uncovered, that is, the game is lost
+     *
+     * @return true if an uncovered dot is mined
+     */
+    public boolean hasUncoveredMine(){
+        return numberUncovered > numberUncoveredSafe;
+    }
+
+   /**
+     * Writes the states of a run of dots of a board being loaded (by
+     * <b>GameSnapshot.load</b>) straight to its storage, and updates the
+     * counters and the flag counters. The mines must be in place, and
+     * nothing is recorded: <b>markAllDirty</b> is expected once the board
+     * is loaded.
+     *
+     * @param from
+     *            the index of the first dot of the run
+     * @param run
+     *            the number of dots of the run
+     * @param state
+     *            the bits set in every dot of the run, any of
+     *            CellStore.UNCOVERED, CLICKED, FLAGGED
+     */
+    void restoreStates(int from, int run, int state){
+        for (int index = from; index < from + run; index++) {
+            int value = model.get(index);
+            model.set(index, value | state);
+            if ((state & CellStore.UNCOVERED) != 0) {
+                numberUncovered++;
+                numberUncoveredSafe += 1 - ((value & CellStore.MINED) >> 4);
+            }
+            if ((state & CellStore.FLAGGED) != 0) {
+                numberOfFlags++;
+                addToFlagCounters(index, 1);
+            }
+        }
+    }
+
+   /**
+     * Sets the numbers of neighbooring mines and the number of mines placed
+     * after mines were written straight to the storage of a new board (by
+     * <b>GameSnapshot.load</b>). The board is scanned once, row by row, from
+     * the number of mines in each horizontal triple of the rows above, at
+     * and below the current one: every dot is written once, rather than
+     * once per neighbooring mine as <b>mineCell</b> does.
+     */
+    void countNeighbooringMines(){
+        int w = widthOfGame;
+        int[] above = new int[w];
+        int[] current = new int[w];
+        int[] below = new int[w];
+        numberOfMinesPlaced = 0;
+        countTriples(0, current);
         for (int i = 0; i < heigthOfGame; i++) {
-            for (int j = 0; j < widthOfGame; j++) {
-                DotInfo dot = get(i, j);
-                if (!dot.isMined() && dot.isCovered()) {
-                    return false;
-                }
+            if (i + 1 < heigthOfGame) {
+                countTriples(i + 1, below);
+            } else {
+                java.util.Arrays.fill(below, 0);
+            }
+            int rowStart = i * w;
+            for (int j = 0; j < w; j++) {
+                int value = model.get(rowStart + j);
+                int mined = (value & CellStore.MINED) >> 4;
+                model.set(rowStart + j, (value & ~CellStore.COUNT_MASK) | (above[j] + current[j] + below[j] - mined));
+                numberOfMinesPlaced += mined;
+            }
+            int[] recycled = above;
+            above = current;
+            current = below;
+            below = recycled;
+        }
+    }
+
+    /**
+     * Stores in triples[j] the number of mines among the dots j-1, j and
+     * j+1 of row i
+     */
+    private void countTriples(int i, int[] triples) {
+        int rowStart = i * widthOfGame;
+        int left = 0;
+        int middle = (model.get(rowStart) & CellStore.MINED) >> 4;
+        for (int j = 0; j < widthOfGame; j++) {
+            int right = j + 1 < widthOfGame ? (model.get(rowStart + j + 1) & CellStore.MINED) >> 4 : 0;
+            triples[j] = left + middle + right;
+            left = middle;
+            middle = right;
+        }
+    }
+
+   /**
+     * Rebuilds the counters from a full scan of the board
+     */
+    void recount(){
+        resetCounters();
+        for (int index = 0; index < model.size(); index++) {
+            int value = cell(index);
+            if ((value & CellStore.UNCOVERED) != 0) {
+                numberUncovered++;
+            }
+            if ((value & (CellStore.MINED | CellStore.UNCOVERED)) == CellStore.UNCOVERED) {
+                numberUncoveredSafe++;
+            }
+            if ((value & CellStore.MINED) != 0) {
+                numberOfMinesPlaced++;
+            }
+            if ((value & CellStore.FLAGGED) != 0) {
+                numberOfFlags++;
             }
         }
-        return true;
     }
 
    /**
@@ -259,11 +956,184 @@ public class GameModel {
 
     }
 
-    private void initButtons() {
-        for (int i = 0; i < getHeigth(); i++) {
-            for (int j = 0; j < getWidth(); j++) {
-                model[i][j] = new DotInfo(i, j);
+    /**
+     * Every change of the board goes through this method, which keeps the
+     * counters in sync with the new state of the dot. Only the changes that
+     * show are listed as changed dots: hiding a mine under a covered dot is
+     * not, so the list never tells where the mines are.
+     */
+    private void write(int index, int value) {
+        int old = cell(index);
+        if (old == value) {
+            return;
+        }
+        int changed = old ^ value;
+        if ((changed & CellStore.UNCOVERED) != 0) {
+            numberUncovered += (value & CellStore.UNCOVERED) != 0 ? 1 : -1;
+        }
+        if ((changed & CellStore.MINED) != 0) {
+            numberOfMinesPlaced += (value & CellStore.MINED) != 0 ? 1 : -1;
+        }
+        if ((changed & CellStore.FLAGGED) != 0) {
+            int delta = (value & CellStore.FLAGGED) != 0 ? 1 : -1;
+            numberOfFlags += delta;
+            addToFlagCounters(index, delta);
+        }
+        boolean wasSafeUncovered = (old & (CellStore.MINED | CellStore.UNCOVERED)) == CellStore.UNCOVERED;
+        boolean isSafeUncovered = (value & (CellStore.MINED | CellStore.UNCOVERED)) == CellStore.UNCOVERED;
+        if (wasSafeUncovered != isSafeUncovered) {
+            numberUncoveredSafe += isSafeUncovered ? 1 : -1;
+        }
+        model.set(index, value);
+        if (history != null) {
+            history.log(index, changed);
+        }
+        if (!allDirty && ((changed & VISIBLE) != 0 || (value & CellStore.UNCOVERED) != 0)) {
+            addDirty(index);
+        }
+    }
+
+    /**
+     * Past an eighth of the board (or MAX_DIRTY dots), redrawing everything
+     * is cheaper than keeping the list, so the list is dropped and the board
+     * marked all dirty.
+     */
+    private void addDirty(int index) {
+        if (dirtyCount == dirty.length) {
+            if (dirtyCount >= Math.min(model.size() / 8, MAX_DIRTY)) {
+                markAllDirty();
+                return;
             }
+            int[] larger = new int[dirty.length * 2];
+            System.arraycopy(dirty, 0, larger, 0, dirtyCount);
+            dirty = larger;
         }
+        dirty[dirtyCount++] = index;
+    }
+
+    /**
+     * Adds delta to the number of neighbooring mines of the eight
+     * neighboors of the dot at the given index. Dots away from the border
+     * are updated without any bound check.
+     */
+    private void addToNeighbors(int index, int delta) {
+        int w = widthOfGame;
+        int i = index / w;
+        int j = index - i * w;
+        if (i > 0 && i < heigthOfGame - 1 && j > 0 && j < w - 1) {
+            addToCount(index - w - 1, delta);
+            addToCount(index - w, delta);
+            addToCount(index - w + 1, delta);
+            addToCount(index - 1, delta);
+            addToCount(index + 1, delta);
+            addToCount(index + w - 1, delta);
+            addToCount(index + w, delta);
+            addToCount(index + w + 1, delta);
+            return;
+        }
+        for (int x = Math.max(i - 1, 0); x <= Math.min(i + 1, heigthOfGame - 1); x++) {
+            for (int y = Math.max(j - 1, 0); y <= Math.min(j + 1, w - 1); y++) {
+                if (x != i || y != j) {
+                    addToCount(x * w + y, delta);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a given value to the number of flagged neighboors of each
+     * neighboor of the dot at the given index. Unlike the number of
+     * neighbooring mines, which fits in the dot, these numbers are kept in a
+     * second store, of the same kind as the board (see <b>CellStore.companion</b>).
+     * <b>ConcurrentBoard</b> calls this holding the locks of the whole
+     * neighboorhood.
+     * 
+     * @param index
+     *            the index of the dot, as returned by <b>index</b>
+     * @param delta
+     *            1 when the dot is flagged, -1 when its flag is removed
+     */   
+    void addToFlagCounters(int index, int delta) {
+        allocateFlagCounters();
+        int w = widthOfGame;
+        int i = index / w;
+        int j = index - i * w;
+        for (int x = Math.max(i - 1, 0); x <= Math.min(i + 1, heigthOfGame - 1); x++) {
+            for (int y = Math.max(j - 1, 0); y <= Math.min(j + 1, w - 1); y++) {
+                if (x != i || y != j) {
+                    int neighboor = x * w + y;
+                    adjacentFlags.set(neighboor, adjacentFlags.get(neighboor) + delta);
+                }
+            }
+        }
+    }
+
+    /**
+     * Getter method for the numbers of flagged neighboors, e.g. to keep
+     * them with the board once the game is closed
+     * 
+     * @return the store of the numbers, or null if nothing was flagged yet
+     */   
+    CellStore getFlagCounters() {
+        return adjacentFlags;
+    }
+
+    /**
+     * Uses a given store for the numbers of flagged neighboors, e.g. one
+     * kept with a pooled board, instead of allocating one at the first flag.
+     * 
+     * @param store
+     *            a cleared store of the size of the board, or null to
+     *            allocate one at the first flag
+     */   
+    void setFlagCounters(CellStore store) {
+        if (store != null && store.size() != model.size()) {
+            throw new IllegalArgumentException(TAG + ": " + store.size()
+                    + " flag counters for " + model.size() + " dots");
+        }
+        adjacentFlags = store;
+        if (numberOfFlags > 0) {
+            recountFlags();
+        }
+    }
+
+    /**
+     * Allocates the numbers of flagged neighboors, if not done yet: on the
+     * heap for an on-heap board, in a mapped file for a mapped board
+     */   
+    void allocateFlagCounters() {
+        if (adjacentFlags == null) {
+            adjacentFlags = model.companion();
+        }
+    }
+
+    private void recountFlags() {
+        if (adjacentFlags != null) {
+            adjacentFlags.clear();
+        }
+        for (int index = 0; index < model.size(); index++) {
+            if ((cell(index) & CellStore.FLAGGED) != 0) {
+                addToFlagCounters(index, 1);
+            }
+        }
+    }
+
+    /**
+     * The number of neighbooring mines sits in the low bits of the dot, 
+     * and does not take part in any counter: it is updated in place.
+     */
+    private void addToCount(int index, int delta) {
+        int old = model.get(index);
+        model.set(index, old + delta);
+        if (history != null) {
+            history.log(index, old ^ (old + delta));
+        }
+    }
+
+    private void resetCounters() {
+        this.numberUncovered = 0;
+        this.numberUncoveredSafe = 0;
+        this.numberOfMinesPlaced = 0;
+        this.numberOfFlags = 0;
     }
 }
@@ -0,0 +1,312 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * The class <b>GameServer</b> hosts one game over TCP, for thin clients. All
+ * the connections are served by a single thread running a <b>Selector</b>
+ * loop, and every move is applied by a <b>GameEngine</b>, the same rules as
+ * <b>GameController</b>.
+ *
+ * Requests are 9 bytes: the action (REVEAL, FLAG or CHORD, as defined in
+ * <b>MoveJournal</b>), the row and the column. The requests received during
+ * a tick are applied, then the dots they changed (read from the changed
+ * dots of the model) are sent to every client in one message:
+ * - DELTA: status, number of dots, then for each dot its index (int) and
+ * its icon (byte)
+ * - BOARD: status, width, heigth, then the icon of every dot, sent to new
+ * clients and after a reset
+ * The status is PLAYING, LOST or WON; a game that is over is reset at the
+ * next tick. Icons are those of <b>DotButton</b>, and the changed dots of
+ * the model do not include the mines hidden at the first click, so covered
+ * mines are never sent, not even by their index. A message is built once
+ * and shared by all the clients.
+ */
+
+public class GameServer {
+
+    static final int REQUEST_SIZE = 9;
+
+    static final int DELTA = 1;
+    static final int BOARD = 2;
+
+    static final int PLAYING = 0;
+    static final int LOST = 1;
+    static final int WON = 2;
+
+    private static final long TICK_MILLIS = 16;
+    private static final int MAX_QUEUED = 256;
+
+    private final GameModel gameModel;
+    private final GameEngine gameEngine;
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final ByteBuffer request = ByteBuffer.allocate(REQUEST_SIZE * 64);
+    private int status = PLAYING;
+    private boolean changed;
+    private volatile boolean running = true;
+
+    /**
+     * The state of one connection: the part of a request received so far,
+     * and the messages not written yet
+     */
+    private static class Client {
+        final ByteBuffer partial = ByteBuffer.allocate(REQUEST_SIZE);
+        final ArrayDeque<ByteBuffer> queue = new ArrayDeque<ByteBuffer>();
+    }
+
+    /**
+     * Constructor used for initializing a server on a given port
+     *
+     * @param port
+     *            the port listened to, 0 for any free port
+     * @param gameModel
+     *            the model of the game served
+     * @throws IOException if the port cannot be opened
+     */
+    public GameServer(int port, GameModel gameModel) throws IOException {
+        this.gameModel = gameModel;
+        this.gameEngine = new GameEngine(gameModel);
+        this.gameEngine.setSafeOpening(true);
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(port), 1024);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Returns the port listened to
+     *
+     * @return the local port of the server
+     */
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    /**
+     * Serves the clients until <b>stop</b> is called
+     *
+     * @throws IOException if the selector fails
+     */
+    public void run() throws IOException {
+        long nextTick = System.currentTimeMillis() + TICK_MILLIS;
+        while (running) {
+            selector.select(Math.max(1, nextTick - System.currentTimeMillis()));
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                try {
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    }
+                    if (key.isValid() && key.isReadable()) {
+                        read(key);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        write(key);
+                    }
+                } catch (IOException e) {
+                    close(key);
+                }
+            }
+            long now = System.currentTimeMillis();
+            if (now >= nextTick) {
+                tick();
+                nextTick = now + TICK_MILLIS;
+            }
+        }
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+    }
+
+    /**
+     * Stops the server; may be called from any thread
+     */
+    public void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = server.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            Client client = new Client();
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ, client);
+            send(key, board());
+        }
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Client client = (Client) key.attachment();
+        request.clear();
+        int read = channel.read(request);
+        if (read < 0) {
+            close(key);
+            return;
+        }
+        request.flip();
+        while (request.hasRemaining()) {
+            while (client.partial.hasRemaining() && request.hasRemaining()) {
+                client.partial.put(request.get());
+            }
+            if (!client.partial.hasRemaining()) {
+                client.partial.flip();
+                apply(client.partial.get(), client.partial.getInt(), client.partial.getInt());
+                client.partial.clear();
+            }
+        }
+    }
+
+    /**
+     * Applies a request to the game, unless the game is over
+     */
+    private void apply(int action, int row, int column) {
+        if (status != PLAYING || row < 0 || row >= gameModel.getHeigth()
+                || column < 0 || column >= gameModel.getWidth()) {
+            return;
+        }
+        GameEngine.Outcome outcome;
+        if (action == MoveJournal.FLAG) {
+            outcome = gameEngine.toggleFlag(row, column);
+        } else if (action == MoveJournal.CHORD) {
+            outcome = gameEngine.chord(row, column);
+        } else if (action == MoveJournal.REVEAL) {
+            outcome = gameEngine.reveal(row, column);
+        } else {
+            return;
+        }
+        if (outcome == GameEngine.Outcome.MINE) {
+            status = LOST;
+        } else if (outcome == GameEngine.Outcome.WON) {
+            status = WON;
+        }
+        changed |= outcome != GameEngine.Outcome.IGNORED;
+    }
+
+    /**
+     * Sends the changes of the tick to every client, and resets the game
+     * if it is over
+     */
+    private void tick() {
+        if (!changed && !gameModel.isAllDirty()) {
+            return;
+        }
+        ByteBuffer message = gameModel.isAllDirty() ? board() : delta();
+        gameModel.clearDirty();
+        changed = false;
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() != null && key.isValid()) {
+                send(key, message.duplicate());
+            }
+        }
+        if (status != PLAYING) {
+            gameEngine.reset();
+            status = PLAYING;
+        }
+    }
+
+    private ByteBuffer delta() {
+        int count = gameModel.getDirtyCount();
+        ByteBuffer message = ByteBuffer.allocate(6 + count * 5);
+        message.put((byte) DELTA).put((byte) status).putInt(count);
+        for (int k = 0; k < count; k++) {
+            int index = gameModel.getDirty(k);
+            message.putInt(index).put((byte) BoardPanel.iconOf(gameModel.cell(index)));
+        }
+        message.flip();
+        return message;
+    }
+
+    private ByteBuffer board() {
+        int size = gameModel.getWidth() * gameModel.getHeigth();
+        ByteBuffer message = ByteBuffer.allocate(10 + size);
+        message.put((byte) BOARD).put((byte) status);
+        message.putInt(gameModel.getWidth()).putInt(gameModel.getHeigth());
+        for (int index = 0; index < size; index++) {
+            message.put((byte) BoardPanel.iconOf(gameModel.cell(index)));
+        }
+        message.flip();
+        return message;
+    }
+
+    /**
+     * Queues a message for a client, and writes as much of it as possible.
+     * A client that falls too far behind is disconnected.
+     */
+    private void send(SelectionKey key, ByteBuffer message) {
+        Client client = (Client) key.attachment();
+        if (client.queue.size() >= MAX_QUEUED) {
+            close(key);
+            return;
+        }
+        client.queue.add(message);
+        try {
+            write(key);
+        } catch (IOException e) {
+            close(key);
+        }
+    }
+
+    private void write(SelectionKey key) throws IOException {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Client client = (Client) key.attachment();
+        while (!client.queue.isEmpty()) {
+            ByteBuffer message = client.queue.peek();
+            channel.write(message);
+            if (message.hasRemaining()) {
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+            client.queue.poll();
+        }
+        key.interestOps(SelectionKey.OP_READ);
+    }
+
+    private void close(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            // already closed
+        }
+    }
+
+    /**
+     * Starts a server on a new game
+     *
+     * @param args
+     *            port width heigth numberOfMines [seed]
+     * @throws IOException if the port cannot be opened
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 4) {
+            System.out.println("usage: port width heigth numberOfMines [seed]");
+            return;
+        }
+        int width = Integer.parseInt(args[1]);
+        int heigth = Integer.parseInt(args[2]);
+        int numberOfMines = Integer.parseInt(args[3]);
+        GameModel gameModel = args.length > 4
+                ? new GameModel(width, heigth, numberOfMines, Long.parseLong(args[4]))
+                : new GameModel(width, heigth, numberOfMines);
+        GameServer server = new GameServer(Integer.parseInt(args[0]), gameModel);
+        System.out.println("Serving a " + width + "x" + heigth + " game on port " + server.getPort());
+        server.run();
+    }
+}
@@ -0,0 +1,239 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The class <b>GameSnapshot</b> saves and loads games in a compact, versioned
+ * binary format. The header holds the size of the board, the number of
+ * mines, the number of steps and the seed. Then:
+ * - if the mines were hidden by <b>MinePlacer</b> and not changed since, only
+ * the dots excluded from the placement are stored, and the mines are hidden
+ * again from the seed at load time
+ * - otherwise, a bitmap of the mines is stored
+ * Finally, the uncovered, clicked and flagged bits of every dot are stored as
+ * runs of equal states. Everything after the header is deflated.
+ *
+ * Games are streamed through NIO channels, dot by dot from the board storage:
+ * no <b>DotInfo</b> object is created. At load time the states, and the
+ * mines of a bitmap, are written straight into the storage of the new board,
+ * with the counters kept as they are written, and every dot is marked as
+ * changed once at the end. A header that does not describe a playable
+ * board is rejected with an <b>IOException</b>, before anything is
+ * allocated.
+ */
+
+public class GameSnapshot {
+
+    private static final int MAGIC = 0x4D535753;
+    private static final int VERSION = 1;
+
+    private static final int SEEDED = 1;
+    private static final int MINES_HIDDEN = 2;
+
+    private static final int STATE_BITS = CellStore.UNCOVERED | CellStore.CLICKED | CellStore.FLAGGED;
+
+    /**
+     * Writes a game to a channel
+     *
+     * @param gameModel
+     *            the model of the game
+     * @param channel
+     *            the channel written to, left open
+     * @throws IOException if the channel cannot be written
+     */
+    public static void save(GameModel gameModel, WritableByteChannel channel) throws IOException {
+        OutputStream raw = new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16);
+        DataOutputStream header = new DataOutputStream(raw);
+        int[] excluded = gameModel.getExcludedDots();
+        boolean hidden = gameModel.getNumberOfMinesPlaced() > 0;
+        header.writeInt(MAGIC);
+        header.writeByte(VERSION);
+        header.writeByte((excluded != null ? SEEDED : 0) | (hidden ? MINES_HIDDEN : 0));
+        header.writeInt(gameModel.getWidth());
+        header.writeInt(gameModel.getHeigth());
+        header.writeInt(gameModel.getNumberOfMines());
+        header.writeInt(gameModel.getNumberOfSteps());
+        header.writeLong(gameModel.getSeed());
+        header.flush();
+
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        DeflaterOutputStream deflated = new DeflaterOutputStream(new NonClosing(raw), deflater, 1 << 16);
+        DataOutputStream body = new DataOutputStream(new BufferedOutputStream(deflated, 1 << 16));
+        int size = gameModel.getWidth() * gameModel.getHeigth();
+        if (hidden && excluded != null) {
+            writeVarint(body, excluded.length);
+            for (int index : excluded) {
+                writeVarint(body, index);
+            }
+        } else if (hidden) {
+            int bits = 0;
+            for (int index = 0; index < size; index++) {
+                if ((gameModel.cell(index) & CellStore.MINED) != 0) {
+                    bits |= 1 << (index & 7);
+                }
+                if ((index & 7) == 7 || index == size - 1) {
+                    body.writeByte(bits);
+                    bits = 0;
+                }
+            }
+        }
+
+        int index = 0;
+        while (index < size) {
+            int state = gameModel.cell(index) & STATE_BITS;
+            int run = 1;
+            while (index + run < size && (gameModel.cell(index + run) & STATE_BITS) == state) {
+                run++;
+            }
+            body.writeByte(state >>> 5);
+            writeVarint(body, run);
+            index += run;
+        }
+        body.flush();
+        deflated.finish();
+        deflater.end();
+        raw.flush();
+    }
+
+    /**
+     * Reads a game from a channel
+     *
+     * @param channel
+     *            the channel read from, left open
+     * @return the model of the game, with the same board and state as the
+     *         saved one
+     * @throws IOException if the channel cannot be read or does not hold
+     *         a saved game
+     */
+    public static GameModel load(ReadableByteChannel channel) throws IOException {
+        InputStream raw = new BufferedInputStream(Channels.newInputStream(channel), 1 << 16);
+        DataInputStream header = new DataInputStream(raw);
+        if (header.readInt() != MAGIC) {
+            throw new IOException("not a saved game");
+        }
+        int version = header.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("unsupported saved game version " + version);
+        }
+        int flags = header.readUnsignedByte();
+        int width = header.readInt();
+        int heigth = header.readInt();
+        int numberOfMines = header.readInt();
+        int steps = header.readInt();
+        long seed = header.readLong();
+        if ((flags & ~(SEEDED | MINES_HIDDEN)) != 0 || width <= 0 || heigth <= 0
+                || (long) width * heigth > Integer.MAX_VALUE) {
+            throw new IOException("corrupted saved game: " + width + "x" + heigth + " board");
+        }
+        int size = width * heigth;
+        if (numberOfMines < 0 || numberOfMines > size || steps < 0) {
+            throw new IOException("corrupted saved game: " + numberOfMines + " mines, " + steps + " steps");
+        }
+
+        Inflater inflater = new Inflater();
+        DataInputStream body = new DataInputStream(new BufferedInputStream(
+                new InflaterInputStream(raw, inflater, 1 << 16), 1 << 16));
+        GameModel gameModel = new GameModel(width, heigth, numberOfMines, seed);
+        CellStore store = gameModel.getStore();
+        if ((flags & MINES_HIDDEN) != 0 && (flags & SEEDED) != 0) {
+            int count = readVarint(body);
+            if (count < 0 || count > size) {
+                throw new IOException("corrupted saved game: " + count + " excluded dots");
+            }
+            int[] excluded = new int[count];
+            for (int k = 0; k < excluded.length; k++) {
+                excluded[k] = readVarint(body);
+                if (excluded[k] < 0 || excluded[k] >= size || (k > 0 && excluded[k] <= excluded[k - 1])) {
+                    throw new IOException("corrupted saved game: excluded dot " + excluded[k]);
+                }
+            }
+            new MinePlacer().placeMines(gameModel, seed, excluded);
+            gameModel.setExcludedDots(excluded);
+        } else if ((flags & MINES_HIDDEN) != 0) {
+            byte[] bitmap = new byte[1 << 13];
+            int bytes = (int) (((long) size + 7) >>> 3);
+            for (int done = 0; done < bytes; done += bitmap.length) {
+                int length = Math.min(bitmap.length, bytes - done);
+                body.readFully(bitmap, 0, length);
+                for (int b = 0; b < length; b++) {
+                    for (int bits = bitmap[b] & 0xFF; bits != 0; bits &= bits - 1) {
+                        long index = ((long) (done + b) << 3) + Integer.numberOfTrailingZeros(bits);
+                        if (index >= size) {
+                            throw new IOException("corrupted saved game");
+                        }
+                        store.set((int) index, CellStore.MINED);
+                    }
+                }
+            }
+            gameModel.countNeighbooringMines();
+        }
+
+        int index = 0;
+        while (index < size) {
+            int state = body.readUnsignedByte() << 5;
+            int run = readVarint(body);
+            if ((state & ~STATE_BITS) != 0 || run <= 0 || run > size - index) {
+                throw new IOException("corrupted saved game");
+            }
+            if (state != 0) {
+                gameModel.restoreStates(index, run, state);
+            }
+            index += run;
+        }
+        inflater.end();
+        gameModel.restoreSteps(steps);
+        gameModel.markAllDirty();
+        return gameModel;
+    }
+
+    private static void writeVarint(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarint(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("corrupted saved game");
+    }
+
+    /**
+     * Lets the deflater finish its stream without closing the channel
+     */
+    private static class NonClosing extends java.io.FilterOutputStream {
+
+        NonClosing(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
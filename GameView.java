@@ -4,23 +4,30 @@ import static java.awt.BorderLayout.*;
 
 /**
  * The class <b>GameView</b> provides the current view of the entire Game. It extends
- * <b>JFrame</b> and lays out a matrix of <b>DotButton</b> (the actual game) and 
- * two instances of JButton. The action listener for the buttons is the controller.
+ * <b>JFrame</b> and lays out a scrollable <b>BoardPanel</b> (the actual game) and 
+ * the control buttons. The action listener for the buttons is the controller.
  *
  * @author Guy-Vincent Jourdan, University of Ottawa
  */
 
 public class GameView extends JFrame {
 
-     private DotButton[][] dots;
+     private BoardPanel board;
      private GameModel gameModel;
      private GameController gameController;
      private JLabel steps;
-     private JButton reset, quit;
-     private JPanel panel, controls, mineBoard;
+     private JButton reset, quit, save, undo, redo;
+     private JToggleButton hints;
+     private JPanel controls;
+     private JScrollPane mineBoard;
      private final String TAG = GameView.class.getSimpleName();
+     private int decodeCount;
      static final String QUIT = "QUIT";
      static final String RESET = "RESET";
+     static final String HINTS = "HINTS";
+     static final String SAVE = "SAVE";
+     static final String UNDO = "UNDO";
+     static final String REDO = "REDO";
 
     /**
      * Constructor used for initializing the Frame
@@ -34,7 +41,9 @@ public class GameView extends JFrame {
     public GameView(GameModel gameModel, GameController gameController) {
         this.gameModel = gameModel;
         this.gameController = gameController;
-        this.dots = new DotButton[gameModel.getWidth()][gameModel.getHeigth()];
+
+        DotButton.loadIcons();
+        decodeCount = DotButton.getDecodeCount();
 
         this.setTitle("MineSweeper It -- the ITI 1121 version");       
 
@@ -51,15 +60,34 @@ public class GameView extends JFrame {
         quit.setActionCommand(QUIT);
         quit.addActionListener(gameController);
 
-        //panel = new JPanel(new GridLayout(400, 400));
+        hints = new JToggleButton("HINTS");
+        hints.setActionCommand(HINTS);
+        hints.addActionListener(gameController);
+
+        save = new JButton("SAVE");
+        save.setActionCommand(SAVE);
+        save.addActionListener(gameController);
+
+        undo = new JButton("UNDO");
+        undo.setActionCommand(UNDO);
+        undo.addActionListener(gameController);
+
+        redo = new JButton("REDO");
+        redo.setActionCommand(REDO);
+        redo.addActionListener(gameController);
+
         controls = new JPanel();
-        mineBoard = new JPanel(new GridLayout(600, 600));
+        board = new BoardPanel(gameModel, gameController);
+        mineBoard = new JScrollPane(board);
+        gameModel.clearDirty();
 
         controls.add(steps, CENTER);
         controls.add(reset, WEST);
         controls.add(quit,EAST);
-
-        update();
+        controls.add(hints, EAST);
+        controls.add(undo, EAST);
+        controls.add(redo, EAST);
+        controls.add(save, EAST);
 
         add(mineBoard, CENTER);
         add(controls, SOUTH);
@@ -70,74 +98,35 @@ public class GameView extends JFrame {
     }
 
     /**
-     * update the status of the board's DotButton instances based 
-     * on the current game model, then redraws the view
+     * update the status of the board based on the current game model,
+     * then redraws the view. Only the dots the model reports as changed
+     * are repainted.
      */
 
     public void update(){
-        int rSize = gameModel.getHeigth();
-        int cSize = gameModel.getWidth();
-
-        remove(mineBoard);
-        mineBoard = new JPanel(new GridLayout(gameModel.getHeigth(), gameModel.getNumberOfSteps()));
-
-        for (int i  = 0; i < rSize; i++) {
-            for (int j = 0; j < cSize; j++) {
-                DotButton dot = new DotButton(j, i, getIcon(i, j));
-                dot.addActionListener(gameController);
-                mineBoard.add(dot);
-            }
+        long start = System.nanoTime();
+        board.update();
+        gameModel.clearDirty();
+        if (GameModel.DEBUG) {
+            int decodes = DotButton.getDecodeCount() - decodeCount;
+            decodeCount += decodes;
+            System.out.println(TAG + ": " + decodes + " icon decodes this move ("
+                    + DotButton.getDecodeNanos() / 1000000 + " ms decoding since start)");
         }
-        add(mineBoard, CENTER);
-        revalidate();
         steps.setText("Number of steps: " + gameModel.getNumberOfSteps());
+        Metrics.VIEW_UPDATES.record(System.nanoTime() - start);
     }
 
     /**
-     * returns the icon value that must be used for a given dot 
-     * in the game
-     * 
-     * @param i
-     *            the x coordinate of the dot
-     * @param j
-     *            the y coordinate of the dot
-     * @return the icon to use for the dot at location (i,j)
-     */   
-    private int getIcon(int i, int j){
-        
-     //ADD YOU CODE HERE
-        DotInfo info = gameModel.get(i, j);
-        int neighbors = info.getNeighbooringMines();
-
-
-        if(info.hasBeenClicked() && info.isMined()) {
-            return DotButton.CLICKED_MINE;
-        } else if(info.isMined() && !info.isCovered()) {
-            return DotButton.MINED;
-        } else if(!info.isCovered()) {
-            switch (neighbors) {
-                case 1:
-                    return DotButton.ONE_NEIGHBOURS;
-                case 2:
-                    return DotButton.TWO_NEIGHBOURS;
-                case 3:
-                    return DotButton.THREE_NEIGHBOURS;
-                case 4:
-                    return DotButton.FOUR_NEIGHBOURS;
-                case 5:
-                    return DotButton.FIVE_NEIGHBOURS;
-                case 6:
-                    return DotButton.SIX_NEIGHBOURS;
-                case 7:
-                    return DotButton.SEVEN_NEIGHBOURS;
-                case 8:
-                    return DotButton.EIGHT_NEIGHBOURS;
-                default:
-                    return DotButton.ZERO_NEIGHBOURS;
-            }
-        }
-        return DotButton.COVERED;
+     * shows the probability of each covered dot to be mined as a heatmap 
+     * over the board, or hides it
+     *
+     * @param probabilities
+     *            the grid computed by <b>ProbabilityEngine</b>, or null
+     *            to hide the heatmap
+     */
+    public void setProbabilities(double[] probabilities){
+        board.setHeatmap(probabilities);
     }
 
-
 }
@@ -0,0 +1,313 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * The class <b>JournalReplayer</b> rebuilds the games recorded by a
+ * <b>MoveJournal</b>. Opening a journal reads it once, skipping the
+ * snapshots, to index the points from which a replay can start: the
+ * beginning of the journal, every reset and every snapshot. Replaying to a
+ * given action then starts from the nearest point before it, and applies the
+ * few actions recorded after that point. A snapshot holds no history: if an
+ * undo or a redo reaches a move played before it, the replay starts again
+ * from the beginning of that game. The mines are hidden as recorded in the
+ * journal, so games played in no-guess mode or with a safe opening are
+ * rebuilt exactly.
+ *
+ * Actions are numbered from 1; replaying to action 0 gives the first game
+ * before any action.
+ */
+
+public class JournalReplayer {
+
+    private static final int FRESH = 0;
+    private static final int RESTORE = 1;
+
+    private final Path file;
+    private final int width;
+    private final int heigth;
+    private final int numberOfMines;
+    private final long firstSeed;
+    private int numberOfActions;
+
+    private int numberOfPoints;
+    private int[] pointActions = new int[16];
+    private long[] pointOffsets = new long[16];
+    // the seed of a new game, or the length of a snapshot
+    private long[] pointValues = new long[16];
+    private int[] pointKinds = new int[16];
+
+    // the actions that hid mines, and how they were hidden
+    private int numberOfPlacements;
+    private int[] placementActions = new int[16];
+    private long[] placementSeeds = new long[16];
+    private int[][] placementExcluded = new int[16][];
+
+    /**
+     * Opens and indexes a journal
+     *
+     * @param file
+     *            the path of the journal
+     * @throws IOException if the file cannot be read or is not a journal
+     */
+    public JournalReplayer(Path file) throws IOException {
+        this.file = file;
+        try (FileChannel channel = FileChannel.open(file)) {
+            CountingInput in = new CountingInput(channel);
+            int magic = in.readInt();
+            int version = in.readInt();
+            if (magic != MoveJournal.MAGIC || version < 1 || version > MoveJournal.VERSION) {
+                throw new IOException("not a journal, or unsupported version");
+            }
+            width = in.readInt();
+            heigth = in.readInt();
+            numberOfMines = in.readInt();
+            firstSeed = in.readLong();
+            addPoint(0, in.position, firstSeed, FRESH);
+            int kind;
+            while ((kind = in.readRecord()) >= 0) {
+                if (kind == MoveJournal.RESET) {
+                    long seed = in.readLong();
+                    numberOfActions++;
+                    addPoint(numberOfActions, in.position, seed, FRESH);
+                } else if (kind == MoveJournal.SNAPSHOT) {
+                    int length = in.readVarint();
+                    addPoint(numberOfActions, in.position, length, RESTORE);
+                    in.skip(length);
+                } else if (kind == MoveJournal.MINES) {
+                    long seed = in.readLong();
+                    int count = in.readVarint();
+                    if (count < 0 || count > (long) width * heigth) {
+                        throw new IOException("corrupted journal");
+                    }
+                    int[] excluded = new int[count];
+                    for (int k = 0; k < count; k++) {
+                        excluded[k] = in.readVarint();
+                    }
+                    addPlacement(numberOfActions, seed, excluded);
+                } else if (kind == MoveJournal.UNDO || kind == MoveJournal.REDO) {
+                    numberOfActions++;
+                } else {
+                    in.readVarint();
+                    in.readVarint();
+                    numberOfActions++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of actions (moves and resets) recorded
+     *
+     * @return the number of actions
+     */
+    public int getNumberOfActions() {
+        return numberOfActions;
+    }
+
+    /**
+     * Rebuilds the game as it was right after a given action
+     *
+     * @param action
+     *            the number of actions applied, between 0 and
+     *            getNumberOfActions()
+     * @return the model of the game
+     * @throws IOException if the journal cannot be read
+     */
+    public GameModel replay(int action) throws IOException {
+        if (action < 0 || action > numberOfActions) {
+            throw new IllegalArgumentException("no action " + action + " in the journal");
+        }
+        int point = 0;
+        for (int k = numberOfPoints - 1; k >= 0; k--) {
+            if (pointActions[k] <= action) {
+                point = k;
+                break;
+            }
+        }
+        GameModel gameModel = replay(point, action);
+        if (gameModel == null) {
+            while (pointKinds[point] != FRESH) {
+                point--;
+            }
+            gameModel = replay(point, action);
+            if (gameModel == null) {
+                throw new IOException("corrupted journal: nothing to undo or redo");
+            }
+        }
+        gameModel.markAllDirty();
+        return gameModel;
+    }
+
+    /**
+     * Rebuilds the game from a given point, or returns null if an undo or a
+     * redo reaches before that point
+     */
+    private GameModel replay(int point, int action) throws IOException {
+        try (FileChannel channel = FileChannel.open(file)) {
+            channel.position(pointOffsets[point]);
+            GameModel gameModel;
+            if (pointKinds[point] == RESTORE) {
+                ByteBuffer snapshot = ByteBuffer.allocate((int) pointValues[point]);
+                while (snapshot.hasRemaining()) {
+                    if (channel.read(snapshot) < 0) {
+                        throw new EOFException("truncated journal");
+                    }
+                }
+                gameModel = GameSnapshot.load(Channels.newChannel(
+                        new ByteArrayInputStream(snapshot.array())));
+            } else {
+                gameModel = new GameModel(width, heigth, numberOfMines, pointValues[point]);
+            }
+            CountingInput in = new CountingInput(channel);
+            GameEngine gameEngine = new GameEngine(gameModel);
+            // no move is ever dropped, so the moves that can be undone are
+            // the latest moves that could be undone in the game
+            gameEngine.setUndoBudget(Long.MAX_VALUE);
+            int current = pointActions[point];
+            int placement = firstPlacementAfter(current);
+            while (current < action) {
+                int kind = in.readRecord();
+                if (kind == MoveJournal.SNAPSHOT) {
+                    in.skip(in.readVarint());
+                    continue;
+                } else if (kind == MoveJournal.MINES) {
+                    in.readLong();
+                    for (int count = in.readVarint(); count > 0; count--) {
+                        in.readVarint();
+                    }
+                    continue;
+                }
+                if (placement < numberOfPlacements && placementActions[placement] == current + 1) {
+                    gameEngine.setNextPlacement(placementSeeds[placement], placementExcluded[placement]);
+                    placement++;
+                }
+                if (kind == MoveJournal.REVEAL) {
+                    gameEngine.reveal(in.readVarint(), in.readVarint());
+                } else if (kind == MoveJournal.FLAG) {
+                    gameEngine.toggleFlag(in.readVarint(), in.readVarint());
+                } else if (kind == MoveJournal.CHORD) {
+                    gameEngine.chord(in.readVarint(), in.readVarint());
+                } else if (kind == MoveJournal.UNDO) {
+                    if (!gameEngine.undo()) {
+                        return null;
+                    }
+                } else if (kind == MoveJournal.REDO) {
+                    if (!gameEngine.redo()) {
+                        return null;
+                    }
+                } else {
+                    throw new IOException("corrupted journal");
+                }
+                current++;
+            }
+            return gameModel;
+        }
+    }
+
+    /**
+     * Returns the first placement recorded after a given action
+     */
+    private int firstPlacementAfter(int action) {
+        int low = 0;
+        int high = numberOfPlacements;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (placementActions[middle] <= action) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private void addPlacement(int action, long seed, int[] excluded) {
+        if (numberOfPlacements == placementActions.length) {
+            int length = numberOfPlacements * 2;
+            placementActions = Arrays.copyOf(placementActions, length);
+            placementSeeds = Arrays.copyOf(placementSeeds, length);
+            placementExcluded = Arrays.copyOf(placementExcluded, length);
+        }
+        placementActions[numberOfPlacements] = action;
+        placementSeeds[numberOfPlacements] = seed;
+        placementExcluded[numberOfPlacements] = excluded;
+        numberOfPlacements++;
+    }
+
+    private void addPoint(int action, long offset, long value, int kind) {
+        if (numberOfPoints == pointActions.length) {
+            int length = numberOfPoints * 2;
+            pointActions = Arrays.copyOf(pointActions, length);
+            pointOffsets = Arrays.copyOf(pointOffsets, length);
+            pointValues = Arrays.copyOf(pointValues, length);
+            pointKinds = Arrays.copyOf(pointKinds, length);
+        }
+        pointActions[numberOfPoints] = action;
+        pointOffsets[numberOfPoints] = offset;
+        pointValues[numberOfPoints] = value;
+        pointKinds[numberOfPoints] = kind;
+        numberOfPoints++;
+    }
+
+    /**
+     * Reads the journal from the current position of a channel, keeping
+     * track of the offset reached
+     */
+    private static class CountingInput {
+
+        private final DataInputStream in;
+        long position;
+
+        CountingInput(FileChannel channel) throws IOException {
+            this.position = channel.position();
+            this.in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+        }
+
+        int readRecord() throws IOException {
+            int kind = in.read();
+            if (kind >= 0) {
+                position++;
+            }
+            return kind;
+        }
+
+        int readInt() throws IOException {
+            position += 4;
+            return in.readInt();
+        }
+
+        long readLong() throws IOException {
+            position += 8;
+            return in.readLong();
+        }
+
+        int readVarint() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = in.readUnsignedByte();
+                position++;
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("corrupted journal");
+        }
+
+        void skip(int length) throws IOException {
+            if (in.skipBytes(length) != length) {
+                throw new EOFException("truncated journal");
+            }
+            position += length;
+        }
+
+    }
+}
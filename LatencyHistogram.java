@@ -0,0 +1,191 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The class <b>LatencyHistogram</b> counts non negative values (durations in
+ * nanoseconds, numbers of dots...) in log-linear buckets, in the manner of
+ * HdrHistogram: values below 64 have their own bucket, and each larger power
+ * of two is split in 32 buckets, so any value is known within about 3%.
+ *
+ * Recording can be done from any thread. Threads record into STRIPES
+ * separate sets of counters, picked from the id of the thread, so threads
+ * playing different games do not write to the same cache lines. A set is
+ * allocated the first time a thread uses it; after that, recording
+ * allocates nothing. The sets are only added up when the histogram is read.
+ */
+
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB;
+    private static final int STRIPES = 64;
+
+    // the counters of a stripe: one per bucket, then the number of values,
+    // their total and their maximum
+    private static final int COUNT = BUCKETS;
+    private static final int TOTAL = BUCKETS + 1;
+    private static final int MAX = BUCKETS + 2;
+    private static final int LENGTH = BUCKETS + 3;
+
+    private final String name;
+    private final String unit;
+    private final AtomicReferenceArray<AtomicLongArray> stripes =
+            new AtomicReferenceArray<AtomicLongArray>(STRIPES);
+
+    /**
+     * Constructor used for initializing an empty histogram
+     *
+     * @param name
+     *            the name of the values recorded
+     * @param unit
+     *            the unit of the values recorded, for the summary
+     */
+    public LatencyHistogram(String name, String unit) {
+        this.name = name;
+        this.unit = unit;
+    }
+
+    /**
+     * Records a value
+     *
+     * @param value
+     *            the value; negative values are recorded as 0
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        AtomicLongArray counters = stripe();
+        counters.incrementAndGet(bucket(value));
+        counters.incrementAndGet(COUNT);
+        counters.addAndGet(TOTAL, value);
+        long current;
+        while (value > (current = counters.get(MAX)) && !counters.compareAndSet(MAX, current, value)) {
+            // another thread of the stripe raised the maximum, try again
+        }
+    }
+
+    /**
+     * Getter method for the number of values recorded
+     *
+     * @return the number of values
+     */
+    public long getCount() {
+        return sum(COUNT);
+    }
+
+    /**
+     * Getter method for the largest value recorded
+     *
+     * @return the maximum, exactly
+     */
+    public long getMax() {
+        long max = 0;
+        for (int s = 0; s < STRIPES; s++) {
+            AtomicLongArray counters = stripes.get(s);
+            if (counters != null) {
+                max = Math.max(max, counters.get(MAX));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Returns the mean of the values recorded
+     *
+     * @return the mean, or 0 if nothing was recorded
+     */
+    public double getMean() {
+        long n = getCount();
+        return n == 0 ? 0 : (double) sum(TOTAL) / n;
+    }
+
+    /**
+     * Returns a value such that a given share of the values recorded are
+     * not larger, within the precision of the buckets
+     *
+     * @param quantile
+     *            the share, between 0 and 1
+     * @return the lowest value of the bucket holding that quantile
+     */
+    public long getQuantile(double quantile) {
+        long n = getCount();
+        if (n == 0) {
+            return 0;
+        }
+        long max = getMax();
+        long rank = Math.max(1, (long) Math.ceil(quantile * n));
+        long seen = 0;
+        for (int k = 0; k < BUCKETS; k++) {
+            seen += sum(k);
+            if (seen >= rank) {
+                return Math.min(lowestValue(k), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Forgets all the values recorded
+     */
+    public void reset() {
+        for (int s = 0; s < STRIPES; s++) {
+            AtomicLongArray counters = stripes.get(s);
+            if (counters != null) {
+                for (int k = 0; k < LENGTH; k++) {
+                    counters.set(k, 0);
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-16s n=%-8d mean=%.0f p50=%d p90=%d p99=%d max=%d %s", name, getCount(),
+                getMean(), getQuantile(0.5), getQuantile(0.9), getQuantile(0.99), getMax(), unit);
+    }
+
+    /**
+     * Returns the counters of the stripe of the current thread
+     */
+    private AtomicLongArray stripe() {
+        int s = (int) (Thread.currentThread().getId() * 0x9E3779B97F4A7C15L >>> 58) & (STRIPES - 1);
+        AtomicLongArray counters = stripes.get(s);
+        if (counters == null) {
+            stripes.compareAndSet(s, null, new AtomicLongArray(LENGTH));
+            counters = stripes.get(s);
+        }
+        return counters;
+    }
+
+    /**
+     * Adds up one counter over all the stripes
+     */
+    private long sum(int k) {
+        long sum = 0;
+        for (int s = 0; s < STRIPES; s++) {
+            AtomicLongArray counters = stripes.get(s);
+            if (counters != null) {
+                sum += counters.get(k);
+            }
+        }
+        return sum;
+    }
+
+    private static int bucket(long value) {
+        if (value < 2 * SUB) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return shift * SUB + (int) (value >>> shift);
+    }
+
+    private static long lowestValue(int bucket) {
+        if (bucket < 2 * SUB) {
+            return bucket;
+        }
+        int shift = bucket / SUB - 1;
+        return (long) (bucket - shift * SUB) << shift;
+    }
+}
@@ -0,0 +1,221 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The class <b>MappedCellStore</b> is a <b>CellStore</b> backed by a memory
+ * mapped file, one byte per dot, for boards too large for the heap. Pages are
+ * loaded and written back by the operating system on demand.
+ *
+ * The file starts with a header holding the size of the board, the seed, the
+ * number of steps and the counters of the <b>GameModel</b>, so a game can be
+ * reopened without reading the board. The header is marked dirty at the first
+ * change after opening, and clean again by <b>save</b>.
+ *
+ * Boards are limited to Integer.MAX_VALUE - 64 dots, about 46000 x 46000:
+ * <b>GameModel</b>, and everything that reads the board through it, index
+ * dots with an int, and the board is one mapped region, itself limited to
+ * 2 GB. Boards of 100000 x 100000 dots would need long indices throughout
+ * the model, not only here; they are refused by <b>create</b>.
+ */
+
+public class MappedCellStore implements CellStore {
+
+    private static final int MAGIC = 0x4D535742;
+    private static final int VERSION = 1;
+    private static final int HEADER = 64;
+
+    private static final int WIDTH_OFFSET = 8;
+    private static final int HEIGTH_OFFSET = 12;
+    private static final int MINES_OFFSET = 16;
+    private static final int SEED_OFFSET = 20;
+    private static final int STEPS_OFFSET = 28;
+    private static final int UNCOVERED_OFFSET = 32;
+    private static final int UNCOVERED_SAFE_OFFSET = 36;
+    private static final int MINES_PLACED_OFFSET = 40;
+    private static final int FLAGS_OFFSET = 44;
+    private static final int CLEAN_OFFSET = 48;
+
+    private final Path file;
+    private final MappedByteBuffer buffer;
+    private final int size;
+    private boolean clean;
+
+    private MappedCellStore(Path file, MappedByteBuffer buffer) throws IOException {
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("not a board file, or unsupported version");
+        }
+        this.file = file;
+        this.buffer = buffer;
+        this.size = buffer.getInt(WIDTH_OFFSET) * buffer.getInt(HEIGTH_OFFSET);
+        this.clean = buffer.get(CLEAN_OFFSET) == 1;
+    }
+
+    /**
+     * Creates a new board file, replacing any existing file
+     *
+     * @param file
+     *            the path of the file
+     * @param width
+     *            the width of the board
+     * @param heigth
+     *            the heigth of the board
+     * @param numberOfMines
+     *            the number of mines of the games
+     * @param seed
+     *            the seed of the first game
+     * @return the store, with all dots cleared
+     * @throws IOException if the file cannot be created
+     */
+    public static MappedCellStore create(Path file, int width, int heigth, int numberOfMines, long seed)
+            throws IOException {
+        long length = HEADER + (long) width * heigth;
+        if (width <= 0 || heigth <= 0 || (long) width * heigth > Integer.MAX_VALUE - HEADER) {
+            throw new IOException(width + "x" + heigth + " is too large for a mapped board, the limit"
+                    + " is " + (Integer.MAX_VALUE - HEADER) + " dots");
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(WIDTH_OFFSET, width);
+            buffer.putInt(HEIGTH_OFFSET, heigth);
+            buffer.putInt(MINES_OFFSET, numberOfMines);
+            buffer.putLong(SEED_OFFSET, seed);
+            buffer.put(CLEAN_OFFSET, (byte) 1);
+            return new MappedCellStore(file, buffer);
+        }
+    }
+
+    /**
+     * Opens an existing board file. Only the header is read.
+     *
+     * @param file
+     *            the path of the file
+     * @return the store
+     * @throws IOException if the file cannot be opened or is not a board
+     */
+    public static MappedCellStore open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return new MappedCellStore(file, channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Writes the seed, the number of steps and the counters of a model in
+     * the header, marks it clean and flushes the file
+     *
+     * @param gameModel
+     *            the model using this store
+     */
+    public void save(GameModel gameModel) {
+        buffer.putLong(SEED_OFFSET, gameModel.getSeed());
+        buffer.putInt(STEPS_OFFSET, gameModel.getNumberOfSteps());
+        buffer.putInt(UNCOVERED_OFFSET, gameModel.getNumberUncovered());
+        buffer.putInt(UNCOVERED_SAFE_OFFSET, gameModel.getNumberUncoveredSafe());
+        buffer.putInt(MINES_PLACED_OFFSET, gameModel.getNumberOfMinesPlaced());
+        buffer.putInt(FLAGS_OFFSET, gameModel.getNumberOfFlags());
+        buffer.put(CLEAN_OFFSET, (byte) 1);
+        buffer.force();
+        clean = true;
+    }
+
+    public int getWidth() {
+        return buffer.getInt(WIDTH_OFFSET);
+    }
+
+    public int getHeigth() {
+        return buffer.getInt(HEIGTH_OFFSET);
+    }
+
+    public int getNumberOfMines() {
+        return buffer.getInt(MINES_OFFSET);
+    }
+
+    public long getSeed() {
+        return buffer.getLong(SEED_OFFSET);
+    }
+
+    public int getNumberOfSteps() {
+        return buffer.getInt(STEPS_OFFSET);
+    }
+
+    public int getNumberUncovered() {
+        return buffer.getInt(UNCOVERED_OFFSET);
+    }
+
+    public int getNumberUncoveredSafe() {
+        return buffer.getInt(UNCOVERED_SAFE_OFFSET);
+    }
+
+    public int getNumberOfMinesPlaced() {
+        return buffer.getInt(MINES_PLACED_OFFSET);
+    }
+
+    public int getNumberOfFlags() {
+        return buffer.getInt(FLAGS_OFFSET);
+    }
+
+    /**
+     * Returns true if the counters of the header match the board
+     *
+     * @return false if the board changed after the last <b>save</b>
+     */
+    public boolean isClean() {
+        return clean;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int get(int index) {
+        return buffer.get(HEADER + index) & 0xFF;
+    }
+
+    public void set(int index, int value) {
+        if (clean) {
+            buffer.put(CLEAN_OFFSET, (byte) 0);
+            clean = false;
+        }
+        buffer.put(HEADER + index, (byte) value);
+    }
+
+    public void clear() {
+        for (int index = 0; index < size; index++) {
+            buffer.put(HEADER + index, (byte) 0);
+        }
+        buffer.put(CLEAN_OFFSET, (byte) 0);
+        clean = false;
+    }
+
+    /**
+     * Creates a cleared mapped store of the same size, in a temporary file
+     * next to this one, so the numbers kept beside a giant board stay off
+     * the heap too. The file is removed at once where the system allows
+     * it (the mapping stays valid), or else on exit.
+     *
+     * @return the new store
+     * @throws UncheckedIOException if the file cannot be created
+     */
+    public CellStore companion() {
+        try {
+            Path companion = Files.createTempFile(file.toAbsolutePath().getParent(),
+                    file.getFileName().toString(), ".companion");
+            MappedCellStore store = create(companion, getWidth(), getHeigth(), 0, 0L);
+            try {
+                Files.delete(companion);
+            } catch (IOException e) {
+                companion.toFile().deleteOnExit();
+            }
+            return store;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
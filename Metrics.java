@@ -0,0 +1,164 @@
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The class <b>Metrics</b> gathers the measures taken on the hot paths of the
+ * game, so one can see where the time goes on a click without attaching a
+ * profiler:
+ * - the latency of every move played through <b>GameEngine</b>
+ * - the number of dots uncovered by every <b>FloodFill.clearZone</b>
+ * - the time spent hiding the mines
+ * - the time spent in <b>GameView.update</b> and painting the board
+ * - the number of icons looked up while painting
+ * Recording is allocation free. Threads record into separate stripes of
+ * each histogram (see <b>LatencyHistogram</b>), added up when the summary
+ * is built, so games played in parallel do not contend. The same measures
+ * are also emitted as Flight Recorder events (category Minesweeper), with
+ * the move index and the size of the board; events are only created while
+ * a recording enables them.
+ *
+ * The summary is printed on exit when the system property
+ * <code>minesweeper.stats</code> is set.
+ */
+
+public class Metrics {
+
+    public static final LatencyHistogram MOVES = new LatencyHistogram("move", "ns");
+    public static final LatencyHistogram REVEALED = new LatencyHistogram("clearZone", "dots");
+    public static final LatencyHistogram MINE_GENERATION = new LatencyHistogram("mine generation", "ns");
+    public static final LatencyHistogram VIEW_UPDATES = new LatencyHistogram("view update", "ns");
+    public static final LatencyHistogram RENDERS = new LatencyHistogram("board paint", "ns");
+    public static final LongAdder ICON_LOOKUPS = new LongAdder();
+
+    private static boolean dumping;
+
+    private static final EventType MOVE_EVENT = EventType.getEventType(MoveEvent.class);
+    private static final EventType MINE_GENERATION_EVENT = EventType.getEventType(MineGenerationEvent.class);
+    private static final EventType RENDER_EVENT = EventType.getEventType(RenderEvent.class);
+
+    /**
+     * A move played through <b>GameEngine</b>
+     */
+    @Name("minesweeper.Move")
+    @Label("Move")
+    @Category("Minesweeper")
+    @StackTrace(false)
+    static class MoveEvent extends Event {
+        @Label("Move Index")
+        int moveIndex;
+        @Label("Board Size")
+        int boardSize;
+        @Label("Action")
+        String action;
+        @Label("Dots Uncovered")
+        int uncovered;
+    }
+
+    /**
+     * The hiding of the mines, at the first move of a game
+     */
+    @Name("minesweeper.MineGeneration")
+    @Label("Mine Generation")
+    @Category("Minesweeper")
+    @StackTrace(false)
+    static class MineGenerationEvent extends Event {
+        @Label("Board Size")
+        int boardSize;
+        @Label("Mines")
+        int numberOfMines;
+        @Label("No Guess")
+        boolean noGuess;
+    }
+
+    /**
+     * A paint of the board
+     */
+    @Name("minesweeper.Render")
+    @Label("Render")
+    @Category("Minesweeper")
+    @StackTrace(false)
+    static class RenderEvent extends Event {
+        @Label("Move Index")
+        int moveIndex;
+        @Label("Board Size")
+        int boardSize;
+        @Label("Icons Painted")
+        int icons;
+    }
+
+    /**
+     * Starts a move event, if a recording wants them
+     *
+     * @return the event, begun, or null
+     */
+    static MoveEvent beginMove() {
+        if (!MOVE_EVENT.isEnabled()) {
+            return null;
+        }
+        MoveEvent event = new MoveEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Starts a mine generation event, if a recording wants them
+     *
+     * @return the event, begun, or null
+     */
+    static MineGenerationEvent beginMineGeneration() {
+        if (!MINE_GENERATION_EVENT.isEnabled()) {
+            return null;
+        }
+        MineGenerationEvent event = new MineGenerationEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Starts a render event, if a recording wants them
+     *
+     * @return the event, begun, or null
+     */
+    static RenderEvent beginRender() {
+        if (!RENDER_EVENT.isEnabled()) {
+            return null;
+        }
+        RenderEvent event = new RenderEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Returns a summary of all the measures
+     *
+     * @return one line per measure
+     */
+    public static String summary() {
+        StringBuilder summary = new StringBuilder();
+        summary.append(MOVES).append('\n');
+        summary.append(REVEALED).append('\n');
+        summary.append(MINE_GENERATION).append('\n');
+        summary.append(VIEW_UPDATES).append('\n');
+        summary.append(RENDERS).append('\n');
+        summary.append("icon lookups     ").append(ICON_LOOKUPS.sum());
+        return summary.toString();
+    }
+
+    /**
+     * Prints the summary when the JVM exits, if the system property
+     * <code>minesweeper.stats</code> is set. Does nothing the second time.
+     */
+    public static synchronized void dumpOnExit() {
+        if (dumping || !Boolean.getBoolean("minesweeper.stats")) {
+            return;
+        }
+        dumping = true;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> System.out.println(summary()), "metrics-dump"));
+    }
+}
@@ -0,0 +1,56 @@
+import java.util.SplittableRandom;
+
+/**
+ * The class <b>MinePlacer</b> hides the mines of a new game. It draws a
+ * uniformly random set of free dots with Floyd's sampling algorithm, which
+ * makes exactly one random draw per mine whatever the density of the board,
+ * and uses the board itself as the set of already chosen dots. The same seed
+ * and the same excluded dots always give the same board. Seeds are mixed by
+ * <b>SplittableRandom</b>, so consecutive seeds give unrelated boards.
+ */
+
+public class MinePlacer {
+
+    /**
+     * Hides <code>gameModel.getNumberOfMines()</code> mines in a board
+     * that has no mine yet. If there are not enough free dots, every free
+     * dot is mined.
+     *
+     * @param gameModel
+     *            the model to mine
+     * @param seed
+     *            the seed of the random draws
+     * @param excluded
+     *            the indices of the dots that must stay free (e.g. the first
+     *            click), sorted in increasing order, without duplicates
+     */
+    public void placeMines(GameModel gameModel, long seed, int[] excluded) {
+        SplittableRandom random = new SplittableRandom(seed);
+        int cells = gameModel.getWidth() * gameModel.getHeigth();
+        int free = cells - excluded.length;
+        int mines = Math.min(gameModel.getNumberOfMines(), free);
+
+        for (int j = free - mines; j < free; j++) {
+            int index = toCell(random.nextInt(j + 1), excluded);
+            if ((gameModel.cell(index) & CellStore.MINED) != 0) {
+                index = toCell(j, excluded);
+            }
+            gameModel.mineCell(index);
+        }
+    }
+
+    /**
+     * Maps a position among the free dots to the index of the dot in the board
+     */
+    private static int toCell(int position, int[] excluded) {
+        int index = position;
+        for (int e : excluded) {
+            if (e <= index) {
+                index++;
+            } else {
+                break;
+            }
+        }
+        return index;
+    }
+}
@@ -1,3 +1,5 @@
+import java.util.Arrays;
+
 /**
  * The class <b>Mineseeper</b> launches the game
  *
@@ -7,25 +9,96 @@ public class Minesweeper {
 
     // ADD YOUR INSTANCE VARIABLES HERE
 
+    private static final long NO_GUESS_BUDGET_MILLIS = 200;
+
    /**
      * <b>main</b> of the application. Creates the instance of  GameController 
      * and starts the game. If three parameters width, heigth,
-     * number of mines are passed, they are used. 
+     * number of mines are passed, they are used. A fourth parameter, 
+     * the seed of the boards, can be added to replay the same games.
      * Otherwise, a default value is used. Defaults values are also
      * used if the paramters are too small (minimum 10 for width,
      * 5 for heigth and 1 for number of mines).
      * Additionally, the maximum number of mines is capped at
      * width*heigth -1
+     * When the first parameter is <code>--simulate</code>, no game is shown:
+     * the other parameters are passed to <b>BatchSimulator</b>. When it is
+     * <code>--benchmark</code>, <b>Benchmarks</b> are run instead, and when
+     * it is <code>--serve</code>, a game is hosted by a <b>GameServer</b>. When it
+     * is <code>--load</code>, the game saved in the file given as second
+     * parameter is resumed. When it
+     * is <code>--replay</code>, the game recorded in the journal given as
+     * second parameter is shown as it was after the action given as third
+     * parameter (by default, the last one). When it
+     * is <code>--journal</code>, the actions are recorded in the journal
+     * given as second parameter, and the other parameters are read as usual.
+     * When it is <code>--no-guess</code>, the game is played on boards that can be
+     * solved without guessing, and the other parameters are read as usual.
+     * 
+     * With the system property <code>minesweeper.stats</code>, a summary of
+     * the <b>Metrics</b> is printed on exit.
      * 
      * @param args
      *            command line parameters
      */
      public static void main(String[] args) {
+        Metrics.dumpOnExit();
+        if (args.length > 0 && args[0].equals("--simulate")) {
+            BatchSimulator.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--serve")) {
+            try {
+                GameServer.main(Arrays.copyOfRange(args, 1, args.length));
+            } catch (java.io.IOException e) {
+                System.out.println("Cannot start the server: " + e.getMessage());
+            }
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--benchmark")) {
+            Benchmarks.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
+        if (args.length == 2 && args[0].equals("--load")) {
+            try (java.nio.channels.FileChannel channel = java.nio.channels.FileChannel.open(
+                    java.nio.file.Paths.get(args[1]))) {
+                new GameController(GameSnapshot.load(channel));
+            } catch (java.io.IOException e) {
+                System.out.println("Cannot load the game: " + e.getMessage());
+            }
+            return;
+        }
+
+        if ((args.length == 2 || args.length == 3) && args[0].equals("--replay")) {
+            try {
+                JournalReplayer replayer = new JournalReplayer(java.nio.file.Paths.get(args[1]));
+                int action = args.length == 3 ? Integer.parseInt(args[2]) : replayer.getNumberOfActions();
+                new GameController(replayer.replay(action));
+            } catch (java.io.IOException | RuntimeException e) {
+                System.out.println("Cannot replay the journal: " + e.getMessage());
+            }
+            return;
+        }
+
+        String journal = null;
+        if (args.length > 1 && args[0].equals("--journal")) {
+            journal = args[1];
+            args = Arrays.copyOfRange(args, 2, args.length);
+        }
+
+        boolean noGuess = false;
+        if (args.length > 0 && args[0].equals("--no-guess")) {
+            noGuess = true;
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+
         int width   = 20;
         int heigth  = 12;
         int numberOfMines = 36;
+        Long seed = null;
 
-        if (args.length == 3) {
+        if (args.length == 3 || args.length == 4) {
             try{
                 width = Integer.parseInt(args[0]);
                 if(width<10){
@@ -42,11 +115,15 @@ public class Minesweeper {
                     System.out.println("Invalid argument, using default...");
                     numberOfMines = 36;
                 }
+                if (args.length == 4) {
+                    seed = Long.parseLong(args[3]);
+                }
             } catch(NumberFormatException e){
                 System.out.println("Invalid argument, using default...");
                 width   = 20;
                 heigth  = 12;
                 numberOfMines = 36;
+                seed = null;
             }
         }
         if(numberOfMines >= width*heigth) {
@@ -56,7 +133,22 @@ public class Minesweeper {
             numberOfMines = (width*heigth - 1);
         }
 
-        GameController game = new GameController(width, heigth,numberOfMines);
+        GameController game;
+        if (seed == null) {
+            game = new GameController(width, heigth, numberOfMines);
+        } else {
+            game = new GameController(width, heigth, numberOfMines, seed);
+        }
+        if (noGuess) {
+            game.setNoGuess(NO_GUESS_BUDGET_MILLIS);
+        }
+        if (journal != null) {
+            try {
+                game.setJournal(MoveJournal.create(java.nio.file.Paths.get(journal), game.getModel()));
+            } catch (java.io.IOException e) {
+                System.out.println("Cannot create the journal: " + e.getMessage());
+            }
+        }
     }
 
 
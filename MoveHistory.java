@@ -0,0 +1,247 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * The class <b>MoveHistory</b> keeps the changes made to the board by the
+ * last moves, so they can be undone and redone. A move is recorded as the
+ * list of the dots it changed: for each change, the index of the dot and the
+ * bits that changed (the xor of the old and new values). Undoing or redoing a
+ * move applies the same xors again, in time proportional to the number of
+ * changes, without copying the board.
+ *
+ * Changes are stored in chunks of primitive arrays, which are kept in a pool
+ * when moves are dropped, so recording does not allocate once the history is
+ * warm. The memory used is capped by a budget: the oldest moves are dropped
+ * to make room, and a move larger than the whole budget cannot be undone
+ * (the history is then cleared).
+ */
+
+public class MoveHistory {
+
+    private static final int CHUNK_SHIFT = 16;
+    private static final int CHUNK = 1 << CHUNK_SHIFT;
+    private static final int BYTES_PER_CHANGE = 5;
+
+    private final long maxChanges;
+    private final ArrayList<int[]> indexChunks = new ArrayList<int[]>();
+    private final ArrayList<byte[]> xorChunks = new ArrayList<byte[]>();
+    private final ArrayDeque<int[]> freeIndexChunks = new ArrayDeque<int[]>();
+    private final ArrayDeque<byte[]> freeXorChunks = new ArrayDeque<byte[]>();
+
+    // positions are counted from the start of the history; chunk k holds
+    // the positions from base + k * CHUNK
+    private long base;
+    private long end;
+
+    // move k holds the positions moveStarts[k] to moveStarts[k + 1]
+    private long[] moveStarts = new long[17];
+    private int[] stepsBefore = new int[16];
+    private int[] stepsAfter = new int[16];
+    private int numberOfMoves;
+    private int current;
+
+    private boolean recording;
+    private boolean overflow;
+
+    /**
+     * Constructor used for initializing an empty history
+     *
+     * @param budgetBytes
+     *            the maximum memory used by the recorded changes
+     */
+    public MoveHistory(long budgetBytes) {
+        this.maxChanges = Math.max(budgetBytes / BYTES_PER_CHANGE, CHUNK);
+    }
+
+    /**
+     * Starts recording a move. The moves undone so far cannot be redone
+     * anymore.
+     *
+     * @param steps
+     *            the number of steps of the game before the move
+     */
+    void begin(int steps) {
+        truncate(current);
+        if (numberOfMoves + 1 == stepsBefore.length) {
+            int length = stepsBefore.length * 2;
+            moveStarts = Arrays.copyOf(moveStarts, length + 1);
+            stepsBefore = Arrays.copyOf(stepsBefore, length);
+            stepsAfter = Arrays.copyOf(stepsAfter, length);
+        }
+        moveStarts[numberOfMoves] = end;
+        stepsBefore[numberOfMoves] = steps;
+        recording = true;
+        overflow = false;
+    }
+
+    /**
+     * Records a change made to a dot, if a move is being recorded
+     *
+     * @param index
+     *            the index of the dot
+     * @param xor
+     *            the bits of the dot that changed
+     */
+    void log(int index, int xor) {
+        if (!recording || overflow) {
+            return;
+        }
+        if (end - base == (long) indexChunks.size() << CHUNK_SHIFT) {
+            while (end - moveStarts[0] >= maxChanges) {
+                if (!dropOldest()) {
+                    overflow = true;
+                    return;
+                }
+            }
+            if (end - base == (long) indexChunks.size() << CHUNK_SHIFT) {
+                indexChunks.add(freeIndexChunks.isEmpty() ? new int[CHUNK] : freeIndexChunks.pop());
+                xorChunks.add(freeXorChunks.isEmpty() ? new byte[CHUNK] : freeXorChunks.pop());
+            }
+        }
+        int position = (int) (end - base);
+        indexChunks.get(position >>> CHUNK_SHIFT)[position & (CHUNK - 1)] = index;
+        xorChunks.get(position >>> CHUNK_SHIFT)[position & (CHUNK - 1)] = (byte) xor;
+        end++;
+    }
+
+    /**
+     * Stops recording a move. A move that changed nothing is not kept.
+     *
+     * @param steps
+     *            the number of steps of the game after the move
+     */
+    void end(int steps) {
+        recording = false;
+        if (overflow) {
+            clear();
+        } else if (end > moveStarts[numberOfMoves]) {
+            stepsAfter[numberOfMoves] = steps;
+            numberOfMoves++;
+            current++;
+            moveStarts[numberOfMoves] = end;
+        }
+    }
+
+    /**
+     * Returns true if a move can be undone
+     *
+     * @return true if there is a move to undo
+     */
+    public boolean canUndo() {
+        return current > 0;
+    }
+
+    /**
+     * Returns true if a move can be redone
+     *
+     * @return true if there is an undone move to redo
+     */
+    public boolean canRedo() {
+        return current < numberOfMoves;
+    }
+
+    /**
+     * Undoes the last move applied to a model
+     *
+     * @param gameModel
+     *            the model the moves were recorded on
+     * @return false if there was no move to undo
+     */
+    boolean undo(GameModel gameModel) {
+        if (!canUndo()) {
+            return false;
+        }
+        current--;
+        apply(gameModel, current);
+        gameModel.restoreSteps(stepsBefore[current]);
+        return true;
+    }
+
+    /**
+     * Redoes the last move undone on a model
+     *
+     * @param gameModel
+     *            the model the moves were recorded on
+     * @return false if there was no move to redo
+     */
+    boolean redo(GameModel gameModel) {
+        if (!canRedo()) {
+            return false;
+        }
+        apply(gameModel, current);
+        gameModel.restoreSteps(stepsAfter[current]);
+        current++;
+        return true;
+    }
+
+    /**
+     * Forgets all the moves
+     */
+    void clear() {
+        truncate(0);
+        recording = false;
+    }
+
+    /**
+     * Returns the number of changes currently kept
+     *
+     * @return the number of recorded changes
+     */
+    public long getNumberOfChanges() {
+        return end - moveStarts[0];
+    }
+
+    /**
+     * Applies again the xors of a move: this undoes it if it is applied, and
+     * redoes it otherwise. Xors commute, so the order does not matter.
+     */
+    private void apply(GameModel gameModel, int move) {
+        for (long p = moveStarts[move]; p < moveStarts[move + 1]; p++) {
+            int position = (int) (p - base);
+            gameModel.toggle(indexChunks.get(position >>> CHUNK_SHIFT)[position & (CHUNK - 1)],
+                    xorChunks.get(position >>> CHUNK_SHIFT)[position & (CHUNK - 1)] & 0xFF);
+        }
+    }
+
+    /**
+     * Drops the oldest kept move, and gives back the chunks it used
+     *
+     * @return false if the only move left is the one being recorded
+     */
+    private boolean dropOldest() {
+        if (numberOfMoves == 0) {
+            return false;
+        }
+        System.arraycopy(moveStarts, 1, moveStarts, 0, numberOfMoves + 1);
+        System.arraycopy(stepsBefore, 1, stepsBefore, 0, numberOfMoves);
+        System.arraycopy(stepsAfter, 1, stepsAfter, 0, numberOfMoves);
+        numberOfMoves--;
+        current--;
+        while (moveStarts[0] - base >= CHUNK) {
+            freeIndexChunks.push(indexChunks.remove(0));
+            freeXorChunks.push(xorChunks.remove(0));
+            base += CHUNK;
+        }
+        return true;
+    }
+
+    /**
+     * Forgets the moves from a given one, and gives back the chunks they used
+     */
+    private void truncate(int move) {
+        end = moveStarts[move];
+        numberOfMoves = move;
+        current = Math.min(current, move);
+        if (move == 0) {
+            base = end;
+            moveStarts[0] = end;
+        }
+        long kept = end - base;
+        int chunks = (int) ((kept + CHUNK - 1) >>> CHUNK_SHIFT);
+        while (indexChunks.size() > chunks) {
+            freeIndexChunks.push(indexChunks.remove(indexChunks.size() - 1));
+            freeXorChunks.push(xorChunks.remove(xorChunks.size() - 1));
+        }
+    }
+}
@@ -0,0 +1,297 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The class <b>MoveJournal</b> records the actions of a session in an
+ * append-only file, so that games can be audited and reproduced by a
+ * <b>JournalReplayer</b>.
+ *
+ * The file starts with a header holding the size of the board, the number of
+ * mines and the seed of the first game. Each action is then appended as one
+ * byte followed by the row and the column as varints, and each reset as one
+ * byte followed by the seed of the new game. Each undo or redo is appended as one
+ * byte. The action that hides the mines is followed by the seed they were
+ * actually hidden with and the dots kept free of mines, since in no-guess
+ * mode the seed is chosen at the first click and a safe opening depends on
+ * the size of the board: a replay hides the same mines whatever the mode of
+ * its engine (version 1 journals do not have these records). A snapshot of
+ * the game, in the format of <b>GameSnapshot</b>, is appended after the
+ * first move of every game (once the mines are hidden)
+ * and then every SNAPSHOT_INTERVAL actions. Snapshots are only checkpoints:
+ * a replay starts from the nearest one and applies the actions recorded
+ * after it, undo and redo included.
+ *
+ * The file is written by a daemon thread, in the order of the calls. At a
+ * checkpoint the calling thread (the event dispatch thread, in the game)
+ * only copies the board; the copy is compressed and written by that
+ * thread. A write that fails is reported by the next call, and pending
+ * writes are finished on <b>close</b> or when the JVM exits.
+ */
+
+public class MoveJournal {
+
+    static final int MAGIC = 0x4D53574A;
+    static final int VERSION = 2;
+
+    /**
+     * predefined values of the records of the journal
+     */
+    public static final int REVEAL = 1;
+    public static final int FLAG = 2;
+    public static final int CHORD = 3;
+    public static final int UNDO = 4;
+    public static final int REDO = 5;
+    static final int RESET = 0x40;
+    static final int SNAPSHOT = 0x41;
+    static final int MINES = 0x42;
+
+    static final int SNAPSHOT_INTERVAL = 1024;
+
+    private final FileChannel channel;
+    private final GameModel gameModel;
+    private final ByteBuffer record = ByteBuffer.allocate(16);
+    private final ExecutorService writer;
+    private final Thread flushOnExit;
+    private volatile IOException failure;
+    private int sinceSnapshot;
+    private boolean snapshotPending;
+    // the excluded dots of the last placement recorded
+    private int[] placed;
+
+    private MoveJournal(FileChannel channel, GameModel gameModel) {
+        this.channel = channel;
+        this.gameModel = gameModel;
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "journal-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.flushOnExit = new Thread(() -> {
+            try {
+                close();
+            } catch (IOException e) {
+                System.out.println("MoveJournal: cannot finish the journal: " + e.getMessage());
+            }
+        }, "journal-flush");
+    }
+
+    /**
+     * Creates a new journal, replacing any existing file. If the game has
+     * already started, a snapshot of it is recorded first.
+     *
+     * @param file
+     *            the path of the journal
+     * @param gameModel
+     *            the model of the game recorded
+     * @return the journal
+     * @throws IOException if the file cannot be written
+     */
+    public static MoveJournal create(Path file, GameModel gameModel) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        MoveJournal journal = new MoveJournal(channel, gameModel);
+        ByteBuffer header = ByteBuffer.allocate(28);
+        header.putInt(MAGIC).putInt(VERSION);
+        header.putInt(gameModel.getWidth()).putInt(gameModel.getHeigth());
+        header.putInt(gameModel.getNumberOfMines()).putLong(gameModel.getSeed());
+        header.flip();
+        journal.write(header);
+        journal.placed = gameModel.getExcludedDots();
+        Runtime.getRuntime().addShutdownHook(journal.flushOnExit);
+        if (gameModel.getNumberOfSteps() > 0) {
+            journal.snapshot();
+        } else {
+            journal.snapshotPending = true;
+        }
+        return journal;
+    }
+
+    /**
+     * Records an action, once it has been applied to the game
+     *
+     * @param action
+     *            the action, based on the predefined constant values defined
+     *            in this class
+     * @param row
+     *            the row of the dot
+     * @param column
+     *            the column of the dot
+     * @throws IOException if the journal cannot be written
+     */
+    public void record(int action, int row, int column) throws IOException {
+        record.clear();
+        record.put((byte) action);
+        putVarint(record, row);
+        putVarint(record, column);
+        record.flip();
+        append(record);
+        int[] excluded = gameModel.getExcludedDots();
+        if (excluded != null && excluded != placed) {
+            recordPlacement(excluded);
+        }
+        sinceSnapshot++;
+        if ((snapshotPending && gameModel.getNumberOfMinesPlaced() > 0)
+                || sinceSnapshot >= SNAPSHOT_INTERVAL) {
+            snapshot();
+        }
+    }
+
+    /**
+     * Records an undo or a redo, once it has been applied to the game
+     *
+     * @param action
+     *            UNDO or REDO
+     * @throws IOException if the journal cannot be written
+     */
+    public void recordUndo(int action) throws IOException {
+        record.clear();
+        record.put((byte) action);
+        record.flip();
+        append(record);
+        sinceSnapshot++;
+        if (sinceSnapshot >= SNAPSHOT_INTERVAL) {
+            snapshot();
+        }
+    }
+
+    /**
+     * Records the start of a new game, once the model has been reset
+     *
+     * @throws IOException if the journal cannot be written
+     */
+    public void recordReset() throws IOException {
+        record.clear();
+        record.put((byte) RESET);
+        record.putLong(gameModel.getSeed());
+        record.flip();
+        append(record);
+        sinceSnapshot = 0;
+        snapshotPending = true;
+    }
+
+    /**
+     * Records how the mines were hidden by the action just recorded: the
+     * seed actually used (the seed of the board found in no-guess mode) and
+     * the dots kept free of mines (the first click, and its neighboors for
+     * a safe opening)
+     */
+    private void recordPlacement(int[] excluded) throws IOException {
+        ByteBuffer placement = ByteBuffer.allocate(14 + 5 * excluded.length);
+        placement.put((byte) MINES);
+        placement.putLong(gameModel.getSeed());
+        putVarint(placement, excluded.length);
+        for (int index : excluded) {
+            putVarint(placement, index);
+        }
+        placement.flip();
+        append(placement);
+        placed = excluded;
+    }
+
+    /**
+     * Closes the journal, once the pending writes are done
+     *
+     * @throws IOException if the journal cannot be written or closed
+     */
+    public void close() throws IOException {
+        writer.shutdown();
+        try {
+            while (!writer.awaitTermination(1, TimeUnit.SECONDS)) {
+                // a large snapshot is being written
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while finishing the journal");
+        } finally {
+            channel.close();
+        }
+        try {
+            Runtime.getRuntime().removeShutdownHook(flushOnExit);
+        } catch (IllegalStateException e) {
+            // called by the hook itself, as the JVM exits
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Copies the game, and hands the copy over to the writer thread, which
+     * compresses it and appends it after the records submitted so far
+     */
+    private void snapshot() throws IOException {
+        checkOpen();
+        GameModel copy = gameModel.copy();
+        sinceSnapshot = 0;
+        snapshotPending = copy.getNumberOfMinesPlaced() == 0;
+        writer.execute(() -> {
+            if (failure != null) {
+                return;
+            }
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                GameSnapshot.save(copy, Channels.newChannel(bytes));
+                ByteBuffer header = ByteBuffer.allocate(6);
+                header.put((byte) SNAPSHOT);
+                putVarint(header, bytes.size());
+                header.flip();
+                write(header);
+                write(ByteBuffer.wrap(bytes.toByteArray()));
+            } catch (IOException e) {
+                failure = e;
+            }
+        });
+    }
+
+    /**
+     * Hands a record over to the writer thread
+     */
+    private void append(ByteBuffer buffer) throws IOException {
+        checkOpen();
+        byte[] bytes = Arrays.copyOfRange(buffer.array(), buffer.position(), buffer.limit());
+        writer.execute(() -> {
+            if (failure != null) {
+                return;
+            }
+            try {
+                write(ByteBuffer.wrap(bytes));
+            } catch (IOException e) {
+                failure = e;
+            }
+        });
+    }
+
+    private void checkOpen() throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+        if (writer.isShutdown()) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void putVarint(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+}
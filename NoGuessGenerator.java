@@ -0,0 +1,118 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The class <b>NoGuessGenerator</b> looks for boards that can be solved from
+ * the first click without guessing: candidate boards are generated with a
+ * safe opening around the first click, and played by a <b>Solver</b>.
+ *
+ * Candidates are tried speculatively on several cores. Candidate k of a game
+ * always gets the same board, and the search returns the lowest k that
+ * succeeds: workers stop as soon as a success below their next candidate is
+ * known, or when the time budget is spent.
+ */
+
+public class NoGuessGenerator {
+
+    private static final long NO_CANDIDATE = Long.MAX_VALUE;
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private final int width;
+    private final int heigth;
+    private final int numberOfMines;
+    private final int workers;
+    private long attempts;
+    private boolean found;
+
+    /**
+     * Constructor used for initializing a generator of a given board
+     *
+     * @param width
+     *            the width of the boards
+     * @param heigth
+     *            the heigth of the boards
+     * @param numberOfMines
+     *            the number of mines of the boards
+     */
+    public NoGuessGenerator(int width, int heigth, int numberOfMines) {
+        this.width = width;
+        this.heigth = heigth;
+        this.numberOfMines = numberOfMines;
+        this.workers = Math.max(1, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Returns the seed of candidate k of a game
+     *
+     * @param gameSeed
+     *            the seed of the game
+     * @param k
+     *            the candidate number
+     * @return the seed to hide the mines of that candidate
+     */
+    public static long candidateSeed(long gameSeed, long k) {
+        return gameSeed + k * GOLDEN_GAMMA;
+    }
+
+    /**
+     * Returns the number of candidates played by the last call to <b>find</b>
+     *
+     * @return the number of candidates tried
+     */
+    public long getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * Returns true if the last call to <b>find</b> found a board before the
+     * end of its budget
+     *
+     * @return false if the seed of the game was returned as a fallback
+     */
+    public boolean isFound() {
+        return found;
+    }
+
+    /**
+     * Finds a candidate board that the solver wins from the given first click
+     *
+     * @param gameSeed
+     *            the seed of the game
+     * @param row
+     *            the line of the first click
+     * @param column
+     *            the column of the first click
+     * @param budgetMillis
+     *            the maximum time of the search
+     * @return the seed of the board found, to be placed with a safe
+     *         opening, or the seed of the game if none was found in time
+     */
+    public long find(long gameSeed, int row, int column, long budgetMillis) {
+        long deadline = System.nanoTime() + budgetMillis * 1000000L;
+        AtomicLong best = new AtomicLong(NO_CANDIDATE);
+        AtomicLong tried = new AtomicLong();
+        CompletableFuture<?>[] tasks = new CompletableFuture<?>[workers];
+        for (int w = 0; w < workers; w++) {
+            int first = w;
+            tasks[w] = CompletableFuture.runAsync(() -> {
+                GameModel gameModel = new GameModel(width, heigth, numberOfMines, gameSeed);
+                GameEngine gameEngine = new GameEngine(gameModel);
+                gameEngine.setSafeOpening(true);
+                Solver solver = new Solver(gameModel);
+                long k = first;
+                while (k < best.get() && System.nanoTime() < deadline) {
+                    gameEngine.reset(candidateSeed(gameSeed, k));
+                    tried.incrementAndGet();
+                    if (solver.play(gameEngine, row, column) == Solver.Result.SOLVED) {
+                        best.accumulateAndGet(k, Math::min);
+                    }
+                    k += workers;
+                }
+            });
+        }
+        CompletableFuture.allOf(tasks).join();
+        attempts = tried.get();
+        found = best.get() != NO_CANDIDATE;
+        return best.get() == NO_CANDIDATE ? gameSeed : candidateSeed(gameSeed, best.get());
+    }
+}
@@ -0,0 +1,308 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The class <b>ParallelFloodFill</b> finishes, on several threads, a flood
+ * fill that has grown too large for <b>FloodFill</b>. The board is split in
+ * square tiles of 256 x 256 dots. Each tile is filled by one worker of a
+ * <b>ForkJoinPool</b>, which only reads and writes the dots of its own tile:
+ * the neighboors that fall in another tile are put in the outbox of the
+ * tile. Between two rounds, the outboxes are delivered to the inboxes of
+ * their tiles, and the tiles that received something are filled again,
+ * until no tile receives anything.
+ *
+ * The dots uncovered are the same as those of the sequential fill: both
+ * uncover every covered, non mined, non flagged neighboor of every
+ * uncovered blank dot reached, whatever the order.
+ *
+ * Workers write the board storage directly; the counters of the model, its
+ * history and its changed dots are updated once the fill is complete.
+ */
+
+public class ParallelFloodFill {
+
+    private static final int TILE_SHIFT = 8;
+    private static final int TILE = 1 << TILE_SHIFT;
+    private static final int CLOSED = CellStore.MINED | CellStore.UNCOVERED | CellStore.FLAGGED;
+
+    private final GameModel gameModel;
+    private final CellStore store;
+    private final ForkJoinPool pool;
+    private final int width;
+    private final int heigth;
+    private final int tilesPerRow;
+    private final Tile[] tiles;
+    private final ThreadLocal<WorkStack> stacks = ThreadLocal.withInitial(WorkStack::new);
+
+    private int[] active = new int[16];
+    private int numberActive;
+    private boolean recordChanges;
+
+    /**
+     * The dots waiting to be opened in one tile, and the results of the tile
+     */
+    private static class Tile {
+        int[] inbox = new int[16];
+        int inboxSize;
+        int[] outbox = new int[16];
+        int outboxSize;
+        int[] changes;
+        int changesSize;
+        int uncovered;
+    }
+
+    /**
+     * The work stack of one worker thread, kept from one tile to the next
+     */
+    private static class WorkStack {
+        int[] indices = new int[1024];
+        int top;
+
+        void push(int index) {
+            if (top == indices.length) {
+                indices = Arrays.copyOf(indices, top * 2);
+            }
+            indices[top++] = index;
+        }
+    }
+
+    /**
+     * Constructor used for initializing the parallel fill of a model
+     *
+     * @param gameModel
+     *            the model whose board is uncovered
+     * @param pool
+     *            the pool running the tiles
+     */
+    public ParallelFloodFill(GameModel gameModel, ForkJoinPool pool) {
+        this.gameModel = gameModel;
+        this.store = gameModel.getStore();
+        this.pool = pool;
+        this.width = gameModel.getWidth();
+        this.heigth = gameModel.getHeigth();
+        this.tilesPerRow = (width + TILE - 1) >>> TILE_SHIFT;
+        this.tiles = new Tile[tilesPerRow * ((heigth + TILE - 1) >>> TILE_SHIFT)];
+    }
+
+    /**
+     * Uncovers the neighboors of some uncovered blank dots, and recursively
+     * the neighboors of the blank dots uncovered
+     *
+     * @param blanks
+     *            the indices of the uncovered blank dots
+     * @param count
+     *            the number of indices in blanks
+     * @return the number of dots uncovered by this call
+     */
+    public int fill(int[] blanks, int count) {
+        recordChanges = gameModel.hasHistory();
+        numberActive = 0;
+        for (int k = 0; k < count; k++) {
+            int index = blanks[k];
+            int i = index / width;
+            int j = index - i * width;
+            for (int x = Math.max(i - 1, 0); x <= Math.min(i + 1, heigth - 1); x++) {
+                for (int y = Math.max(j - 1, 0); y <= Math.min(j + 1, width - 1); y++) {
+                    if (x != i || y != j) {
+                        deliver(x * width + y);
+                    }
+                }
+            }
+        }
+
+        while (numberActive > 0) {
+            int[] round = Arrays.copyOf(active, numberActive);
+            numberActive = 0;
+            pool.invoke(new Round(round, 0, round.length));
+            for (int id : round) {
+                Tile tile = tiles[id];
+                for (int k = 0; k < tile.outboxSize; k++) {
+                    deliver(tile.outbox[k]);
+                }
+                tile.outboxSize = 0;
+            }
+        }
+
+        int uncovered = 0;
+        for (Tile tile : tiles) {
+            if (tile != null && tile.uncovered > 0) {
+                uncovered += tile.uncovered;
+                gameModel.uncovered(tile.changes, tile.changesSize, tile.uncovered);
+                tile.uncovered = 0;
+                tile.changesSize = 0;
+            }
+        }
+        return uncovered;
+    }
+
+    private int tileOf(int index) {
+        int i = index / width;
+        return (i >>> TILE_SHIFT) * tilesPerRow + ((index - i * width) >>> TILE_SHIFT);
+    }
+
+    private void deliver(int index) {
+        int id = tileOf(index);
+        Tile tile = tiles[id];
+        if (tile == null) {
+            tile = tiles[id] = new Tile();
+        }
+        if (tile.inboxSize == 0) {
+            if (numberActive == active.length) {
+                active = Arrays.copyOf(active, numberActive * 2);
+            }
+            active[numberActive++] = id;
+        }
+        if (tile.inboxSize == tile.inbox.length) {
+            tile.inbox = Arrays.copyOf(tile.inbox, tile.inboxSize * 2);
+        }
+        tile.inbox[tile.inboxSize++] = index;
+    }
+
+    /**
+     * Fills the tiles active[from] to active[to - 1]
+     */
+    private class Round extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int[] round;
+        private final int from;
+        private final int to;
+
+        Round(int[] round, int from, int to) {
+            this.round = round;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                fillTile(round[from]);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Round(round, from, middle), new Round(round, middle, to));
+        }
+    }
+
+    private void fillTile(int id) {
+        Tile tile = tiles[id];
+        WorkStack stack = stacks.get();
+        int rowFrom = (id / tilesPerRow) << TILE_SHIFT;
+        int rowTo = Math.min(rowFrom + TILE, heigth) - 1;
+        int columnFrom = (id % tilesPerRow) << TILE_SHIFT;
+        int columnTo = Math.min(columnFrom + TILE, width) - 1;
+        stack.top = 0;
+
+        for (int k = 0; k < tile.inboxSize; k++) {
+            int index = tile.inbox[k];
+            if (open(tile, index)) {
+                stack.push(index);
+            }
+        }
+        tile.inboxSize = 0;
+
+        // same span fill as FloodFill, clipped to the tile
+        while (stack.top > 0) {
+            int index = stack.indices[--stack.top];
+            int row = index / width;
+            int rowStart = row * width;
+            int left = index - rowStart;
+            int right = left;
+
+            while (left > columnFrom && isBlank(rowStart + left - 1) && open(tile, rowStart + left - 1)) {
+                left--;
+            }
+            if (left > columnFrom) {
+                open(tile, rowStart + left - 1);
+            } else if (left > 0) {
+                send(tile, rowStart + left - 1);
+            }
+            while (right < columnTo && isBlank(rowStart + right + 1) && open(tile, rowStart + right + 1)) {
+                right++;
+            }
+            if (right < columnTo) {
+                open(tile, rowStart + right + 1);
+            } else if (right < width - 1) {
+                send(tile, rowStart + right + 1);
+            }
+
+            int from = Math.max(left - 1, 0);
+            int to = Math.min(right + 1, width - 1);
+            for (int x = row - 1; x <= row + 1; x += 2) {
+                if (x < 0 || x >= heigth) {
+                    continue;
+                }
+                int start = x * width;
+                if (x < rowFrom || x > rowTo) {
+                    for (int y = from; y <= to; y++) {
+                        send(tile, start + y);
+                    }
+                    continue;
+                }
+                if (from < columnFrom) {
+                    send(tile, start + from);
+                }
+                if (to > columnTo) {
+                    send(tile, start + to);
+                }
+                scanRow(tile, stack, start, Math.max(from, columnFrom), Math.min(to, columnTo));
+            }
+        }
+    }
+
+    /**
+     * Uncovers the dots of the columns [from, to] of a row of a tile,
+     * adjacent to a blank run. As in <b>FloodFill</b>, only the first dot of
+     * each blank run found is pushed.
+     */
+    private void scanRow(Tile tile, WorkStack stack, int rowStart, int from, int to) {
+        int y = from;
+        while (y <= to) {
+            int index = rowStart + y;
+            y++;
+            if (open(tile, index)) {
+                stack.push(index);
+                while (y <= to && isBlank(rowStart + y) && (store.get(rowStart + y) & CLOSED) == 0) {
+                    y++;
+                }
+            }
+        }
+    }
+
+    private boolean isBlank(int index) {
+        return (store.get(index) & (CellStore.MINED | CellStore.COUNT_MASK)) == 0;
+    }
+
+    private void send(Tile tile, int index) {
+        if (tile.outboxSize == tile.outbox.length) {
+            tile.outbox = Arrays.copyOf(tile.outbox, tile.outboxSize * 2);
+        }
+        tile.outbox[tile.outboxSize++] = index;
+    }
+
+    /**
+     * Uncovers a dot of a tile if it is covered, not mined and not flagged
+     *
+     * @return true if the dot was uncovered and is blank
+     */
+    private boolean open(Tile tile, int index) {
+        int value = store.get(index);
+        if ((value & CLOSED) != 0) {
+            return false;
+        }
+        store.set(index, value | CellStore.UNCOVERED);
+        tile.uncovered++;
+        if (recordChanges) {
+            if (tile.changes == null) {
+                tile.changes = new int[64];
+            } else if (tile.changesSize == tile.changes.length) {
+                tile.changes = Arrays.copyOf(tile.changes, tile.changesSize * 2);
+            }
+            tile.changes[tile.changesSize++] = index;
+        }
+        return (value & CellStore.COUNT_MASK) == 0;
+    }
+}
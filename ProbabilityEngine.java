@@ -0,0 +1,482 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The class <b>ProbabilityEngine</b> computes, for every covered dot, the
+ * exact probability that it is mined, given what a player sees: the numbers
+ * of the uncovered dots and the total number of mines.
+ *
+ * The covered dots next to a number (the frontier) are split into independent
+ * components: two dots are in the same component if a chain of numbers links
+ * them. The mine configurations of each component are enumerated by 
+ * backtracking and counted by number of mines. Components are then combined
+ * with the other covered dots, weighting each total number of frontier mines
+ * t by the number of ways, C(U, M - t), to hide the remaining mines among the
+ * U dots away from the frontier. Components are enumerated in parallel.
+ *
+ * A component whose enumeration exceeds the node budget is estimated from its
+ * numbers instead, and <b>isExact</b> returns false.
+ *
+ * The grids of the size of the board (the probabilities, the union-find
+ * forest, the component and the position of each dot) are allocated once and
+ * reused by every call, until the size of the board changes.
+ */
+
+public class ProbabilityEngine {
+
+    /**
+     * Value of the probability grid for uncovered dots
+     */
+    public static final double UNCOVERED = -1;
+
+    private static final long NODE_BUDGET = 2000000L;
+    private static final int MAX_EXACT_CELLS = 256;
+
+    private GameModel gameModel;
+    private boolean exact;
+    private double[] probabilities;
+    private int[] parent;
+    private int[] componentOf;
+    private int[] position;
+    private final int[] neighborIndices = new int[8];
+
+    /**
+     * Constructor used for initializing the engine of a model
+     *
+     * @param gameModel
+     *            the model whose probabilities are computed
+     */
+    public ProbabilityEngine(GameModel gameModel) {
+        this.gameModel = gameModel;
+    }
+
+    /**
+     * Returns true if the last computed grid is exact
+     *
+     * @return false if a component had to be estimated
+     */
+    public boolean isExact() {
+        return exact;
+    }
+
+    /**
+     * Computes the probability grid of the current board
+     *
+     * @return the probability that each dot is mined, indexed as in
+     *         <b>GameModel.index</b>, or UNCOVERED for uncovered dots. The
+     *         grid is overwritten by the next call.
+     */
+    public double[] compute() {
+        int width = gameModel.getWidth();
+        int heigth = gameModel.getHeigth();
+        int size = width * heigth;
+        int mines = gameModel.getNumberOfMinesPlaced() > 0 ? gameModel.getNumberOfMinesPlaced()
+                : Math.min(gameModel.getNumberOfMines(), size - 1);
+        if (probabilities == null || probabilities.length != size) {
+            probabilities = new double[size];
+            parent = new int[size];
+            componentOf = new int[size];
+            position = new int[size];
+        }
+        Arrays.fill(probabilities, 0);
+        exact = true;
+
+        Arrays.fill(parent, -1);
+        int covered = 0;
+        int frontier = 0;
+        for (int index = 0; index < size; index++) {
+            int value = gameModel.cell(index);
+            if ((value & CellStore.UNCOVERED) != 0) {
+                probabilities[index] = UNCOVERED;
+                if ((value & CellStore.COUNT_MASK) != 0) {
+                    int first = -1;
+                    int count = neighbors(index);
+                    for (int k = 0; k < count; k++) {
+                        int n = neighborIndices[k];
+                        if ((gameModel.cell(n) & CellStore.UNCOVERED) == 0) {
+                            if (parent[n] == -1) {
+                                parent[n] = n;
+                                frontier++;
+                            }
+                            if (first == -1) {
+                                first = n;
+                            } else {
+                                union(parent, first, n);
+                            }
+                        }
+                    }
+                }
+            } else {
+                covered++;
+            }
+        }
+        if ((gameModel.getNumberUncovered() == 0)) {
+            Arrays.fill(probabilities, (double) mines / size);
+            return probabilities;
+        }
+
+        List<Component> components = new ArrayList<Component>();
+        Arrays.fill(componentOf, -1);
+        for (int index = 0; index < size; index++) {
+            if (parent[index] != -1) {
+                int root = find(parent, index);
+                if (componentOf[root] == -1) {
+                    componentOf[root] = components.size();
+                    components.add(new Component());
+                }
+                components.get(componentOf[root]).cells.add(index);
+            }
+        }
+        for (Component component : components) {
+            for (int v = 0; v < component.cells.size(); v++) {
+                position[component.cells.get(v)] = v;
+            }
+        }
+        for (int index = 0; index < size; index++) {
+            int value = gameModel.cell(index);
+            if ((value & CellStore.UNCOVERED) == 0 || (value & CellStore.COUNT_MASK) == 0) {
+                continue;
+            }
+            Component component = null;
+            List<Integer> vars = new ArrayList<Integer>();
+            int neighborCount = neighbors(index);
+            for (int k = 0; k < neighborCount; k++) {
+                int n = neighborIndices[k];
+                if (parent[n] != -1 && (gameModel.cell(n) & CellStore.UNCOVERED) == 0) {
+                    component = components.get(componentOf[find(parent, n)]);
+                    vars.add(position[n]);
+                }
+            }
+            if (component != null) {
+                component.addConstraint(vars, value & CellStore.COUNT_MASK);
+            }
+        }
+        components.parallelStream().forEach(Component::enumerate);
+
+        int exterior = covered - frontier;
+        double[] weights = exteriorWeights(components, exterior, mines);
+        int count = components.size();
+        double[][] prefix = new double[count + 1][];
+        double[][] suffix = new double[count + 1][];
+        prefix[0] = new double[] {1};
+        suffix[count] = new double[] {1};
+        for (int c = 0; c < count; c++) {
+            prefix[c + 1] = convolve(prefix[c], components.get(c).totals);
+        }
+        for (int c = count - 1; c >= 0; c--) {
+            suffix[c] = convolve(suffix[c + 1], components.get(c).totals);
+        }
+        double[] all = prefix[count];
+        double total = 0;
+        double exteriorMines = 0;
+        for (int t = 0; t < all.length; t++) {
+            total += all[t] * weights[t];
+            exteriorMines += all[t] * weights[t] * Math.max(mines - t, 0);
+        }
+        if (total == 0) {
+            exact = false;
+            total = Double.MIN_VALUE;
+        }
+
+        for (int c = 0; c < count; c++) {
+            Component component = components.get(c);
+            double[] others = convolve(prefix[c], suffix[c + 1]);
+            for (int k = 0; k < component.totals.length; k++) {
+                double weight = 0;
+                for (int t = 0; t < others.length && k + t < weights.length; t++) {
+                    weight += others[t] * weights[k + t];
+                }
+                if (weight == 0) {
+                    continue;
+                }
+                if (component.cellTotals[k] == null) {
+                    continue;
+                }
+                for (int v = 0; v < component.cells.size(); v++) {
+                    probabilities[component.cells.get(v)] += component.cellTotals[k][v] * weight / total;
+                }
+            }
+            exact &= component.exact;
+        }
+        double exteriorProbability = exterior == 0 ? 0 : exteriorMines / total / exterior;
+        for (int index = 0; index < size; index++) {
+            if (probabilities[index] != UNCOVERED && parent[index] == -1) {
+                probabilities[index] = exteriorProbability;
+            }
+        }
+        return probabilities;
+    }
+
+    /**
+     * Returns, for each possible number t of frontier mines, a value
+     * proportional to C(exterior, mines - t), computed in log space
+     */
+    private static double[] exteriorWeights(List<Component> components, int exterior, int mines) {
+        int maxFrontier = 0;
+        for (Component component : components) {
+            maxFrontier += component.totals.length - 1;
+        }
+        double[] logs = new double[maxFrontier + 1];
+        double max = Double.NEGATIVE_INFINITY;
+        for (int t = 0; t <= maxFrontier; t++) {
+            int n = mines - t;
+            if (n < 0 || n > exterior) {
+                logs[t] = Double.NEGATIVE_INFINITY;
+            } else {
+                logs[t] = logChoose(exterior, n);
+            }
+            max = Math.max(max, logs[t]);
+        }
+        double[] weights = new double[maxFrontier + 1];
+        for (int t = 0; t <= maxFrontier; t++) {
+            weights[t] = logs[t] == Double.NEGATIVE_INFINITY ? 0 : Math.exp(logs[t] - max);
+        }
+        return weights;
+    }
+
+    /**
+     * log C(n, k), summing the smaller of the two ranges of logarithms
+     */
+    private static double logChoose(int n, int k) {
+        k = Math.min(k, n - k);
+        double log = 0;
+        for (int i = 1; i <= k; i++) {
+            log += Math.log(n - k + i) - Math.log(i);
+        }
+        return log;
+    }
+
+    private static double[] convolve(double[] a, double[] b) {
+        double[] result = new double[a.length + b.length - 1];
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] == 0) {
+                continue;
+            }
+            for (int j = 0; j < b.length; j++) {
+                result[i + j] += a[i] * b[j];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Stores the indices of the neighboors of a dot at the start of
+     * <code>neighborIndices</code>, and returns how many there are
+     */
+    private int neighbors(int index) {
+        int width = gameModel.getWidth();
+        int heigth = gameModel.getHeigth();
+        int row = index / width;
+        int column = index - row * width;
+        int size = 0;
+        for (int x = Math.max(row - 1, 0); x <= Math.min(row + 1, heigth - 1); x++) {
+            for (int y = Math.max(column - 1, 0); y <= Math.min(column + 1, width - 1); y++) {
+                if (x != row || y != column) {
+                    neighborIndices[size++] = x * width + y;
+                }
+            }
+        }
+        return size;
+    }
+
+    private static int find(int[] parent, int index) {
+        while (parent[index] != index) {
+            parent[index] = parent[parent[index]];
+            index = parent[index];
+        }
+        return index;
+    }
+
+    private static void union(int[] parent, int a, int b) {
+        int rootA = find(parent, a);
+        int rootB = find(parent, b);
+        if (rootA != rootB) {
+            parent[rootA] = rootB;
+        }
+    }
+
+    /**
+     * A set of frontier dots linked by numbers, and the numbers around them
+     */
+    private class Component {
+
+        final List<Integer> cells = new ArrayList<Integer>();
+        double[] totals;
+        double[][] cellTotals;
+        boolean exact = true;
+
+        private final List<int[]> constraints = new ArrayList<int[]>();
+        private final List<Integer> targetList = new ArrayList<Integer>();
+        private int[] order;
+        private int[][] constraintsOf;
+        private int[] targets;
+        private int[] assignedMines;
+        private int[] unassigned;
+        private boolean[] mined;
+        private long nodes;
+
+        /**
+         * Adds a number next to this component
+         *
+         * @param vars
+         *            the positions, in cells, of the covered neighboors
+         * @param target
+         *            the number of mines around the number
+         */
+        void addConstraint(List<Integer> vars, int target) {
+            int[] constraint = new int[vars.size()];
+            for (int k = 0; k < constraint.length; k++) {
+                constraint[k] = vars.get(k);
+            }
+            constraints.add(constraint);
+            targetList.add(target);
+        }
+
+        void enumerate() {
+            int n = cells.size();
+            buildConstraints();
+            totals = new double[n + 1];
+            cellTotals = new double[n + 1][];
+            mined = new boolean[n];
+            nodes = 0;
+            if (n > MAX_EXACT_CELLS || !search(0)) {
+                exact = false;
+                estimate();
+            }
+        }
+
+        /**
+         * Orders the dots so that numbers get fully assigned early, and
+         * records, for each dot, the numbers it touches
+         */
+        private void buildConstraints() {
+            int n = cells.size();
+            List<List<Integer>> touching = new ArrayList<List<Integer>>();
+            for (int v = 0; v < n; v++) {
+                touching.add(new ArrayList<Integer>());
+            }
+            for (int c = 0; c < constraints.size(); c++) {
+                for (int v : constraints.get(c)) {
+                    touching.get(v).add(c);
+                }
+            }
+
+            order = new int[n];
+            boolean[] placed = new boolean[n];
+            int head = 0;
+            int tail = 0;
+            for (int start = 0; start < n; start++) {
+                if (placed[start]) {
+                    continue;
+                }
+                placed[start] = true;
+                order[tail++] = start;
+                while (head < tail) {
+                    int v = order[head++];
+                    for (int c : touching.get(v)) {
+                        for (int w : constraints.get(c)) {
+                            if (!placed[w]) {
+                                placed[w] = true;
+                                order[tail++] = w;
+                            }
+                        }
+                    }
+                }
+            }
+
+            constraintsOf = new int[n][];
+            for (int v = 0; v < n; v++) {
+                List<Integer> list = touching.get(v);
+                constraintsOf[v] = new int[list.size()];
+                for (int k = 0; k < list.size(); k++) {
+                    constraintsOf[v][k] = list.get(k);
+                }
+            }
+            targets = new int[constraints.size()];
+            unassigned = new int[constraints.size()];
+            assignedMines = new int[constraints.size()];
+            for (int c = 0; c < targets.length; c++) {
+                targets[c] = targetList.get(c);
+                unassigned[c] = constraints.get(c).length;
+            }
+        }
+
+        /**
+         * Assigns the dots from order[depth] on, returns false when the
+         * node budget is exhausted
+         */
+        private boolean search(int depth) {
+            if (++nodes > NODE_BUDGET) {
+                return false;
+            }
+            if (depth == order.length) {
+                int k = 0;
+                for (boolean m : mined) {
+                    if (m) {
+                        k++;
+                    }
+                }
+                totals[k]++;
+                if (cellTotals[k] == null) {
+                    cellTotals[k] = new double[mined.length];
+                }
+                for (int v = 0; v < mined.length; v++) {
+                    if (mined[v]) {
+                        cellTotals[k][v]++;
+                    }
+                }
+                return true;
+            }
+            int v = order[depth];
+            for (int state = 0; state <= 1; state++) {
+                boolean consistent = true;
+                for (int c : constraintsOf[v]) {
+                    unassigned[c]--;
+                    assignedMines[c] += state;
+                    if (assignedMines[c] > targets[c] || assignedMines[c] + unassigned[c] < targets[c]) {
+                        consistent = false;
+                    }
+                }
+                mined[v] = state == 1;
+                boolean withinBudget = !consistent || search(depth + 1);
+                for (int c : constraintsOf[v]) {
+                    unassigned[c]++;
+                    assignedMines[c] -= state;
+                }
+                mined[v] = false;
+                if (!withinBudget) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Replaces the enumeration of a component too large to enumerate by
+         * a single configuration count spread with the local densities
+         */
+        private void estimate() {
+            int n = cells.size();
+            Arrays.fill(totals, 0);
+            Arrays.fill(cellTotals, null);
+            double expected = 0;
+            double[] density = new double[n];
+            for (int c = 0; c < targets.length; c++) {
+                int[] constraint = constraints.get(c);
+                for (int v : constraint) {
+                    density[v] = Math.max(density[v], (double) targets[c] / constraint.length);
+                }
+            }
+            for (int v = 0; v < n; v++) {
+                expected += density[v];
+            }
+            int k = (int) Math.min(Math.round(expected), n);
+            totals[k] = 1;
+            cellTotals[k] = new double[n];
+            for (int v = 0; v < n; v++) {
+                cellTotals[k][v] = expected == 0 ? 0 : density[v] * k / expected;
+            }
+        }
+    }
+}
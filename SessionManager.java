@@ -0,0 +1,311 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The class <b>SessionManager</b> hosts many independent games in one JVM.
+ * Each game is a session, known by its id, played through its own
+ * <b>GameEngine</b>. Moves on one session are serialized; moves on
+ * different sessions run in parallel.
+ *
+ * A session that receives no move for longer than the idle timeout is
+ * closed. The board of a closed session, with the numbers of flagged
+ * neighboors allocated at its first flag, is cleared and kept in a pool,
+ * grouped by size class (the number of dots), and given to the next
+ * session of the same size. A restart clears the board in place, so
+ * neither restarting a game nor replacing a closed session allocates a
+ * new board.
+ */
+
+public class SessionManager {
+
+    private static final int MAX_POOLED_PER_SIZE = 256;
+
+    private final ConcurrentHashMap<Long, Session> sessions = new ConcurrentHashMap<Long, Session>();
+    private final ConcurrentHashMap<Integer, ConcurrentLinkedDeque<Board>> pool =
+            new ConcurrentHashMap<Integer, ConcurrentLinkedDeque<Board>>();
+    private final ConcurrentHashMap<Integer, AtomicInteger> pooledCounts =
+            new ConcurrentHashMap<Integer, AtomicInteger>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final long idleTimeoutNanos;
+    private final ScheduledExecutorService reaper;
+
+    /**
+     * One hosted game
+     */
+    private static class Session {
+        final GameEngine gameEngine;
+        final Board board;
+        volatile long lastAccess;
+
+        Session(GameEngine gameEngine, Board board) {
+            this.gameEngine = gameEngine;
+            this.board = board;
+            this.lastAccess = System.nanoTime();
+        }
+    }
+
+    /**
+     * The board of a session, and the numbers of flagged neighboors that go
+     * with it once allocated
+     */
+    private static class Board {
+        final CellStore store;
+        CellStore flagCounters;
+
+        Board(CellStore store) {
+            this.store = store;
+        }
+    }
+
+    /**
+     * Constructor used for initializing an empty manager. Idle sessions
+     * are looked for every half timeout, by a daemon thread.
+     *
+     * @param idleTimeoutMillis
+     *            the time after which a session with no move is closed
+     */
+    public SessionManager(long idleTimeoutMillis) {
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        this.reaper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "session-reaper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(idleTimeoutMillis / 2, 1);
+        reaper.scheduleAtFixedRate(this::closeIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opens a new session
+     *
+     * @param width
+     *            the width of the board
+     * @param heigth
+     *            the heigth of the board
+     * @param numberOfMines
+     *            the number of mines hidden in the board
+     * @param seed
+     *            the seed of the first game
+     * @return the id of the session
+     */
+    public long open(int width, int heigth, int numberOfMines, long seed) {
+        Board board = takeBoard(width * heigth);
+        GameModel gameModel = new GameModel(width, heigth, numberOfMines, seed, board.store);
+        gameModel.setFlagCounters(board.flagCounters);
+        GameEngine gameEngine = new GameEngine(gameModel);
+        gameEngine.setSafeOpening(true);
+        long id = nextId.getAndIncrement();
+        sessions.put(id, new Session(gameEngine, board));
+        return id;
+    }
+
+    /**
+     * Selects a dot of a session
+     *
+     * @param id
+     *            the id of the session
+     * @param row
+     *            the selected line
+     * @param column
+     *            the selected column
+     * @return the outcome of the move
+     */
+    public GameEngine.Outcome reveal(long id, int row, int column) {
+        return play(id, MoveJournal.REVEAL, row, column);
+    }
+
+    /**
+     * Flags or unflags a dot of a session
+     *
+     * @param id
+     *            the id of the session
+     * @param row
+     *            the selected line
+     * @param column
+     *            the selected column
+     * @return the outcome of the move
+     */
+    public GameEngine.Outcome toggleFlag(long id, int row, int column) {
+        return play(id, MoveJournal.FLAG, row, column);
+    }
+
+    /**
+     * Chords on a dot of a session
+     *
+     * @param id
+     *            the id of the session
+     * @param row
+     *            the selected line
+     * @param column
+     *            the selected column
+     * @return the outcome of the move
+     */
+    public GameEngine.Outcome chord(long id, int row, int column) {
+        return play(id, MoveJournal.CHORD, row, column);
+    }
+
+    /**
+     * Starts a new game in a session, on the same board
+     *
+     * @param id
+     *            the id of the session
+     */
+    public void restart(long id) {
+        GameEngine gameEngine = touch(id);
+        synchronized (gameEngine) {
+            checkOpen(id);
+            gameEngine.reset();
+        }
+    }
+
+    /**
+     * Returns the engine of a session, to read its board. The engine and
+     * its model must only be used while holding the lock of the engine.
+     *
+     * @param id
+     *            the id of the session
+     * @return the engine of the session
+     */
+    public GameEngine getEngine(long id) {
+        return touch(id);
+    }
+
+    /**
+     * Returns true if a session is open
+     *
+     * @param id
+     *            the id of the session
+     * @return true if the session exists and was not closed
+     */
+    public boolean isOpen(long id) {
+        return sessions.containsKey(id);
+    }
+
+    /**
+     * Getter method for the number of open sessions
+     *
+     * @return the number of sessions
+     */
+    public int getNumberOfSessions() {
+        return sessions.size();
+    }
+
+    /**
+     * Returns the number of boards of a given size waiting in the pool
+     *
+     * @param size
+     *            the number of dots of the boards
+     * @return the number of pooled boards
+     */
+    public int getNumberPooled(int size) {
+        AtomicInteger count = pooledCounts.get(size);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * Closes a session, and gives its board back to the pool
+     *
+     * @param id
+     *            the id of the session
+     */
+    public void close(long id) {
+        Session session = sessions.remove(id);
+        if (session != null) {
+            synchronized (session.gameEngine) {
+                session.board.flagCounters = session.gameEngine.getModel().getFlagCounters();
+                giveBoard(session.board);
+            }
+        }
+    }
+
+    /**
+     * Closes every session, and stops looking for idle sessions
+     */
+    public void shutdown() {
+        reaper.shutdownNow();
+        for (Long id : sessions.keySet()) {
+            close(id);
+        }
+    }
+
+    /**
+     * Closes the sessions that have been idle for longer than the timeout
+     */
+    void closeIdle() {
+        long now = System.nanoTime();
+        for (Map.Entry<Long, Session> entry : sessions.entrySet()) {
+            if (now - entry.getValue().lastAccess > idleTimeoutNanos) {
+                close(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Applies a move to a session, once no other move of the session is
+     * running
+     */
+    private GameEngine.Outcome play(long id, int action, int row, int column) {
+        GameEngine gameEngine = touch(id);
+        synchronized (gameEngine) {
+            checkOpen(id);
+            if (action == MoveJournal.FLAG) {
+                return gameEngine.toggleFlag(row, column);
+            } else if (action == MoveJournal.CHORD) {
+                return gameEngine.chord(row, column);
+            }
+            return gameEngine.reveal(row, column);
+        }
+    }
+
+    /**
+     * Checks, holding the lock of its engine, that a session was not closed
+     * (and its board given back to the pool) since it was looked up
+     */
+    private void checkOpen(long id) {
+        if (!sessions.containsKey(id)) {
+            throw new IllegalArgumentException("session " + id + " was closed");
+        }
+    }
+
+    /**
+     * Returns the engine of an open session, and records the access
+     */
+    private GameEngine touch(long id) {
+        Session session = sessions.get(id);
+        if (session == null) {
+            throw new IllegalArgumentException("no session " + id);
+        }
+        session.lastAccess = System.nanoTime();
+        return session.gameEngine;
+    }
+
+    private Board takeBoard(int size) {
+        ConcurrentLinkedDeque<Board> boards = pool.get(size);
+        Board board = boards == null ? null : boards.pollFirst();
+        if (board == null) {
+            return new Board(new ByteCellStore(size));
+        }
+        pooledCounts.get(size).decrementAndGet();
+        return board;
+    }
+
+    private void giveBoard(Board board) {
+        int size = board.store.size();
+        AtomicInteger count = pooledCounts.computeIfAbsent(size, key -> new AtomicInteger());
+        if (count.incrementAndGet() > MAX_POOLED_PER_SIZE) {
+            count.decrementAndGet();
+            return;
+        }
+        board.store.clear();
+        if (board.flagCounters != null) {
+            board.flagCounters.clear();
+        }
+        pool.computeIfAbsent(size, key -> new ConcurrentLinkedDeque<Board>()).addFirst(board);
+    }
+}
@@ -0,0 +1,359 @@
+/**
+ * The class <b>Solver</b> finds the dots that are provably safe or provably
+ * mined, using only what a player sees: the numbers of the uncovered dots.
+ *
+ * Two rules are applied to the uncovered numbered dots on the frontier:
+ * - single dot: if a number is already matched by its known mines, its
+ * other covered neighboors are safe; if it needs all of them, they are mines
+ * - pairs: for two numbers close to each other, if the mines that the second
+ * needs outside of the first fill exactly its covered dots outside of the
+ * first, these are mines and the dots only next to the first are safe
+ *
+ * Rules are applied in a work-queue loop: when a dot becomes known, only
+ * the numbers around it are checked again. All buffers are primitive and 
+ * kept from one game to the next.
+ */
+
+public class Solver {
+
+    /**
+     * The possible results of a game played by the solver
+     */
+    public enum Result {
+        /** every safe dot was uncovered */
+        SOLVED,
+        /** no dot could be proved safe, a guess would be needed */
+        STUCK,
+        /** a mine was hit, which only happens if the first click does */
+        LOST
+    }
+
+    private static final byte UNKNOWN = 0;
+    private static final byte SAFE = 1;
+    private static final byte MINE = 2;
+    private static final byte QUEUED = 4;
+
+    private GameModel gameModel;
+    private int width;
+    private int heigth;
+    private byte[] knowledge;
+    private int[] queue;
+    private int queueSize;
+    private int[] safes;
+    private int safeCount;
+    private int mineCount;
+    private final int[] unknownA = new int[8];
+    private final int[] unknownB = new int[8];
+
+    /**
+     * Constructor used for initializing the solver of a model
+     *
+     * @param gameModel
+     *            the model to solve
+     */
+    public Solver(GameModel gameModel) {
+        this.gameModel = gameModel;
+        this.knowledge = new byte[0];
+        this.queue = new int[0];
+        this.safes = new int[0];
+    }
+
+    /**
+     * Finds every dot of the current board that the rules prove safe or
+     * mined. The results are read with <b>isSafe</b> and <b>isMine</b>.
+     *
+     * @return the number of covered dots proved safe
+     */
+    public int solve() {
+        start();
+        enqueueAll();
+        propagate();
+        return safeCount;
+    }
+
+    /**
+     * Returns true if the last call to <b>solve</b> or <b>play</b> proved the
+     * dot at location (i,j) safe
+     *
+     * @param i
+     *            the x coordinate of the dot
+     * @param j
+     *            the y coordinate of the dot
+     * @return true if the dot is provably safe
+     */
+    public boolean isSafe(int i, int j) {
+        return (knowledge[gameModel.index(i, j)] & (SAFE | MINE)) == SAFE;
+    }
+
+    /**
+     * Returns true if the last call to <b>solve</b> or <b>play</b> proved the
+     * dot at location (i,j) mined
+     *
+     * @param i
+     *            the x coordinate of the dot
+     * @param j
+     *            the y coordinate of the dot
+     * @return true if the dot is provably mined
+     */
+    public boolean isMine(int i, int j) {
+        return (knowledge[gameModel.index(i, j)] & MINE) != 0;
+    }
+
+    /**
+     * Returns the number of covered dots proved mined by the last call to
+     * <b>solve</b> or <b>play</b>
+     *
+     * @return the number of provable mines
+     */
+    public int getMineCount() {
+        return mineCount;
+    }
+
+    /**
+     * Plays a whole game of an engine, from a first click at location
+     * (row,column), uncovering proved safe dots until the game is won or no
+     * dot can be proved safe.
+     *
+     * @param gameEngine
+     *            the engine of the game, reset and not started
+     * @param row
+     *            the line of the first click
+     * @param column
+     *            the column of the first click
+     * @return the result of the game
+     */
+    public Result play(GameEngine gameEngine, int row, int column) {
+        gameModel = gameEngine.getModel();
+        start();
+        GameEngine.Outcome outcome = gameEngine.reveal(row, column);
+        while (true) {
+            if (outcome == GameEngine.Outcome.WON) {
+                return Result.SOLVED;
+            } else if (outcome == GameEngine.Outcome.MINE) {
+                return Result.LOST;
+            }
+            enqueueChanged();
+            propagate();
+            if (safeCount == 0) {
+                return Result.STUCK;
+            }
+            while (safeCount > 0) {
+                int index = safes[--safeCount];
+                if ((gameModel.cell(index) & CellStore.UNCOVERED) == 0) {
+                    outcome = gameEngine.reveal(index / width, index % width);
+                    if (outcome != GameEngine.Outcome.SAFE) {
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    private void start() {
+        width = gameModel.getWidth();
+        heigth = gameModel.getHeigth();
+        int size = width * heigth;
+        if (knowledge.length < size) {
+            knowledge = new byte[size];
+            queue = new int[size];
+            safes = new int[size];
+        } else {
+            java.util.Arrays.fill(knowledge, 0, size, UNKNOWN);
+        }
+        queueSize = 0;
+        safeCount = 0;
+        mineCount = 0;
+        gameModel.clearDirty();
+    }
+
+    /**
+     * Queues the numbers changed since the last reveal: the newly uncovered
+     * dots and the numbers around them, whose covered neighboors just
+     * became fewer, or the whole board if the model lost track of the
+     * changes. The changed dots that are still covered (the mines hidden by
+     * the first click) tell nothing, and are skipped.
+     */
+    private void enqueueChanged() {
+        if (gameModel.isAllDirty()) {
+            enqueueAll();
+        } else {
+            for (int k = 0; k < gameModel.getDirtyCount(); k++) {
+                int index = gameModel.getDirty(k);
+                if ((gameModel.cell(index) & CellStore.UNCOVERED) == 0) {
+                    continue;
+                }
+                knowledge[index] |= SAFE;
+                int row = index / width;
+                int column = index - row * width;
+                for (int x = Math.max(row - 1, 0); x <= Math.min(row + 1, heigth - 1); x++) {
+                    for (int y = Math.max(column - 1, 0); y <= Math.min(column + 1, width - 1); y++) {
+                        enqueue(x * width + y);
+                    }
+                }
+            }
+        }
+        gameModel.clearDirty();
+    }
+
+    private void enqueueAll() {
+        int size = width * heigth;
+        for (int index = 0; index < size; index++) {
+            if ((gameModel.cell(index) & CellStore.UNCOVERED) != 0) {
+                knowledge[index] |= SAFE;
+                enqueue(index);
+            }
+        }
+    }
+
+    private void enqueue(int index) {
+        int value = gameModel.cell(index);
+        if ((value & CellStore.UNCOVERED) != 0 && (value & CellStore.COUNT_MASK) != 0
+                && (knowledge[index] & QUEUED) == 0) {
+            knowledge[index] |= QUEUED;
+            queue[queueSize++] = index;
+        }
+    }
+
+    private void propagate() {
+        while (queueSize > 0) {
+            int a = queue[--queueSize];
+            knowledge[a] &= ~QUEUED;
+            int sizeA = unknownNeighbors(a, unknownA);
+            if (sizeA == 0) {
+                continue;
+            }
+            int remainingA = remainingMines(a);
+            if (remainingA == 0) {
+                for (int k = 0; k < sizeA; k++) {
+                    learn(unknownA[k], SAFE);
+                }
+                continue;
+            }
+            if (remainingA == sizeA) {
+                for (int k = 0; k < sizeA; k++) {
+                    learn(unknownA[k], MINE);
+                }
+                continue;
+            }
+            comparePairs(a, sizeA, remainingA);
+        }
+    }
+
+    /**
+     * Applies the pair rule between a and every number up to two dots away
+     */
+    private void comparePairs(int a, int sizeA, int remainingA) {
+        int row = a / width;
+        int column = a - row * width;
+        for (int x = Math.max(row - 2, 0); x <= Math.min(row + 2, heigth - 1); x++) {
+            for (int y = Math.max(column - 2, 0); y <= Math.min(column + 2, width - 1); y++) {
+                int b = x * width + y;
+                int value = gameModel.cell(b);
+                if (b == a || (value & CellStore.UNCOVERED) == 0 || (value & CellStore.COUNT_MASK) == 0) {
+                    continue;
+                }
+                int sizeB = unknownNeighbors(b, unknownB);
+                if (sizeB == 0) {
+                    continue;
+                }
+                int remainingB = remainingMines(b);
+                int onlyA = sizeA - shared(sizeA, sizeB);
+                int onlyB = sizeB - (sizeA - onlyA);
+                if (remainingB - remainingA == onlyB && onlyB > 0) {
+                    learnDifference(unknownB, sizeB, unknownA, sizeA, MINE);
+                    learnDifference(unknownA, sizeA, unknownB, sizeB, SAFE);
+                    return;
+                } else if (remainingA - remainingB == onlyA && onlyA > 0) {
+                    learnDifference(unknownA, sizeA, unknownB, sizeB, MINE);
+                    learnDifference(unknownB, sizeB, unknownA, sizeA, SAFE);
+                    return;
+                }
+            }
+        }
+    }
+
+    private int shared(int sizeA, int sizeB) {
+        int shared = 0;
+        for (int k = 0; k < sizeA; k++) {
+            for (int l = 0; l < sizeB; l++) {
+                if (unknownA[k] == unknownB[l]) {
+                    shared++;
+                    break;
+                }
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Learns the state of the dots of first that are not in second
+     */
+    private void learnDifference(int[] first, int sizeFirst, int[] second, int sizeSecond, byte state) {
+        for (int k = 0; k < sizeFirst; k++) {
+            boolean inSecond = false;
+            for (int l = 0; l < sizeSecond; l++) {
+                if (first[k] == second[l]) {
+                    inSecond = true;
+                    break;
+                }
+            }
+            if (!inSecond) {
+                learn(first[k], state);
+            }
+        }
+    }
+
+    private void learn(int index, byte state) {
+        if ((knowledge[index] & (SAFE | MINE)) != 0) {
+            return;
+        }
+        knowledge[index] |= state;
+        if (state == SAFE) {
+            safes[safeCount++] = index;
+        } else {
+            mineCount++;
+        }
+        int row = index / width;
+        int column = index - row * width;
+        for (int x = Math.max(row - 1, 0); x <= Math.min(row + 1, heigth - 1); x++) {
+            for (int y = Math.max(column - 1, 0); y <= Math.min(column + 1, width - 1); y++) {
+                enqueue(x * width + y);
+            }
+        }
+    }
+
+    /**
+     * Fills unknown with the covered neighboors of index not known yet
+     */
+    private int unknownNeighbors(int index, int[] unknown) {
+        int row = index / width;
+        int column = index - row * width;
+        int size = 0;
+        for (int x = Math.max(row - 1, 0); x <= Math.min(row + 1, heigth - 1); x++) {
+            for (int y = Math.max(column - 1, 0); y <= Math.min(column + 1, width - 1); y++) {
+                int n = x * width + y;
+                if (n != index && (knowledge[n] & (SAFE | MINE)) == 0) {
+                    unknown[size++] = n;
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the number of mines around index not known yet
+     */
+    private int remainingMines(int index) {
+        int row = index / width;
+        int column = index - row * width;
+        int remaining = gameModel.cell(index) & CellStore.COUNT_MASK;
+        for (int x = Math.max(row - 1, 0); x <= Math.min(row + 1, heigth - 1); x++) {
+            for (int y = Math.max(column - 1, 0); y <= Math.min(column + 1, width - 1); y++) {
+                if ((knowledge[x * width + y] & MINE) != 0) {
+                    remaining--;
+                }
+            }
+        }
+        return remaining;
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * The class <b>ConcurrentStress</b> stress checks a <b>ConcurrentBoard</b>:
+ * several threads flag, unflag, chord and reveal at random on boards whose
+ * last row and column start a new tile, mostly around the tile corners.
+ * After every board, the counters and the numbers of neighbooring flags
+ * must match a full scan. Run with <code>-Dminesweeper.debug=true</code> to
+ * also check that every flag and chord holds the locks of its
+ * neighboorhood.
+ *
+ * It is not part of the game: it is compiled with the classes of the game,
+ * and run on its own. It exits with status 1 if a board is wrong.
+ */
+
+public class ConcurrentStress {
+
+    /**
+     * Runs the check. Parameters: [boards [threads [size]]]
+     *
+     * @param args
+     *            command line parameters
+     * @throws InterruptedException if interrupted while waiting for the
+     *            threads
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int boards = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int size = args.length > 2 ? Integer.parseInt(args[2]) : 65;
+        int bad = 0;
+        long start = System.nanoTime();
+        for (int b = 0; b < boards; b++) {
+            GameModel gameModel = new GameModel(size, size, size * size / 8, b);
+            GameEngine gameEngine = new GameEngine(gameModel);
+            gameEngine.setSafeOpening(true);
+            gameEngine.reveal(0, 0);
+            ConcurrentBoard board = new ConcurrentBoard(gameModel);
+            Thread[] players = new Thread[threads];
+            java.util.concurrent.atomic.AtomicReference<Throwable> failure =
+                    new java.util.concurrent.atomic.AtomicReference<Throwable>();
+            for (int t = 0; t < threads; t++) {
+                long seed = (long) b * threads + t;
+                players[t] = new Thread(() -> {
+                    java.util.SplittableRandom random = new java.util.SplittableRandom(seed);
+                    try {
+                        for (int move = 0; move < 20000; move++) {
+                            int row = random.nextInt(4) == 0 ? random.nextInt(size) : size - 1 - random.nextInt(4);
+                            int column = random.nextInt(2) == 0 ? random.nextInt(size) : size - 1 - random.nextInt(4);
+                            if (random.nextInt(2) == 0) {
+                                int swap = row;
+                                row = column;
+                                column = swap;
+                            }
+                            int action = random.nextInt(16);
+                            if (action < 10) {
+                                board.toggleFlag(row, column);
+                            } else if (action < 15) {
+                                board.chord(row, column);
+                            } else {
+                                board.reveal(row, column);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                });
+                players[t].start();
+            }
+            for (Thread player : players) {
+                player.join();
+            }
+            board.commit();
+            String problem = failure.get() == null ? null : failure.get().toString();
+            try {
+                gameModel.checkCounters();
+            } catch (IllegalStateException e) {
+                problem = e.getMessage();
+            }
+            for (int i = 0; i < size && problem == null; i++) {
+                for (int j = 0; j < size && problem == null; j++) {
+                    int flags = 0;
+                    for (int x = Math.max(i - 1, 0); x <= Math.min(i + 1, size - 1); x++) {
+                        for (int y = Math.max(j - 1, 0); y <= Math.min(j + 1, size - 1); y++) {
+                            if ((x != i || y != j) && gameModel.isFlagged(x, y)) {
+                                flags++;
+                            }
+                        }
+                    }
+                    if (flags != gameModel.getNeighbooringFlags(i, j)) {
+                        problem = "(" + i + "," + j + ") has " + flags + " flagged neighboors, counted "
+                                + gameModel.getNeighbooringFlags(i, j);
+                    }
+                }
+            }
+            if (problem != null) {
+                bad++;
+                System.out.println("board " + b + ": " + problem);
+            }
+        }
+        System.out.printf("%d boards of %dx%d, %d threads, %d moves each, in %.1f s: %d bad%n", boards,
+                size, size, threads, 20000, (System.nanoTime() - start) / 1e9, bad);
+        if (bad > 0) {
+            System.exit(1);
+        }
+    }
+}
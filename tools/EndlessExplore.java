@@ -0,0 +1,52 @@
+import java.io.IOException;
+import java.util.SplittableRandom;
+
+/**
+ * The class <b>EndlessExplore</b> explores an <b>EndlessBoard</b>,
+ * revealing dots at random further and further from the origin, and prints
+ * the memory used as it goes.
+ *
+ * It is not part of the game: it is compiled with the classes of the game,
+ * and run on its own.
+ */
+
+public class EndlessExplore {
+
+    /**
+     * Runs the exploration. Parameters: [seed [density [moves [maxChunks]]]]
+     *
+     * @param args
+     *            command line parameters
+     */
+    public static void main(String[] args) {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 0L;
+        double density = args.length > 1 ? Double.parseDouble(args[1]) : 0.15;
+        int moves = args.length > 2 ? Integer.parseInt(args[2]) : 1000000;
+        int maxChunks = args.length > 3 ? Integer.parseInt(args[3]) : 4096;
+        try (EndlessBoard board = new EndlessBoard(seed, density, maxChunks)) {
+            explore(board, seed, moves);
+        } catch (IOException e) {
+            System.out.println("Cannot use the spill file: " + e.getMessage());
+        }
+    }
+
+    private static void explore(EndlessBoard board, long seed, int moves) {
+        SplittableRandom random = new SplittableRandom(seed);
+        Runtime runtime = Runtime.getRuntime();
+        long start = System.nanoTime();
+        board.reveal(0, 0);
+        for (int move = 1; move <= moves; move++) {
+            int radius = 16 + (int) Math.sqrt(move) * 8;
+            board.reveal(random.nextInt(2 * radius) - radius, random.nextInt(2 * radius) - radius);
+            if (move % (moves / 10 == 0 ? 1 : moves / 10) == 0) {
+                System.gc();
+                System.out.printf("%d moves, %d dots uncovered, %d mines hit, %d chunks loaded,"
+                        + " %d evicted (%d KB), %d spilled (%d KB), %d MB used, %.1f s%n", move,
+                        board.getUncovered(), board.getExplosions(), board.getLoadedChunks(),
+                        board.getEvictedChunks(), board.getEvictedBytes() >> 10, board.getSpilledChunks(),
+                        board.getSpillBytes() >> 10, (runtime.totalMemory() - runtime.freeMemory()) >> 20,
+                        (System.nanoTime() - start) / 1e9);
+            }
+        }
+    }
+}
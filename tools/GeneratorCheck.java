@@ -0,0 +1,74 @@
+/**
+ * The class <b>GeneratorCheck</b> checks the boards of the
+ * <b>NoGuessGenerator</b>: it looks for a no-guess board for seeded games
+ * from a random first click, then plays every board found again with a new
+ * model, engine and solver, which must solve it without guessing. The
+ * time spent searching each game is reported too.
+ *
+ * It is not part of the game: it is compiled with the classes of the game,
+ * and run on its own. It exits with status 1 if a board found is not
+ * solved again.
+ */
+
+public class GeneratorCheck {
+
+    /**
+     * Runs the check. Parameters: games width heigth mines
+     * [budgetMillis [seed]]
+     *
+     * @param args
+     *            command line parameters
+     */
+    public static void main(String[] args) {
+        if (args.length < 4) {
+            System.out.println("Usage: GeneratorCheck games width heigth mines [budgetMillis [seed]]");
+            return;
+        }
+        int games = Integer.parseInt(args[0]);
+        int width = Integer.parseInt(args[1]);
+        int heigth = Integer.parseInt(args[2]);
+        int numberOfMines = Integer.parseInt(args[3]);
+        long budgetMillis = args.length > 4 ? Long.parseLong(args[4]) : 200L;
+        long seed = args.length > 5 ? Long.parseLong(args[5]) : 0L;
+        NoGuessGenerator generator = new NoGuessGenerator(width, heigth, numberOfMines);
+        GameModel gameModel = new GameModel(width, heigth, numberOfMines, seed);
+        GameEngine gameEngine = new GameEngine(gameModel);
+        gameEngine.setSafeOpening(true);
+        int accepted = 0;
+        int failed = 0;
+        long attempts = 0;
+        long[] nanos = new long[games];
+        long start = System.nanoTime();
+        for (int g = 0; g < games; g++) {
+            java.util.SplittableRandom random = new java.util.SplittableRandom(seed + g);
+            long gameSeed = random.nextLong();
+            int row = random.nextInt(heigth);
+            int column = random.nextInt(width);
+            long found = System.nanoTime();
+            long boardSeed = generator.find(gameSeed, row, column, budgetMillis);
+            nanos[g] = System.nanoTime() - found;
+            attempts += generator.getAttempts();
+            if (!generator.isFound()) {
+                continue;
+            }
+            accepted++;
+            gameEngine.reset(boardSeed);
+            if (new Solver(gameModel).play(gameEngine, row, column) != Solver.Result.SOLVED) {
+                failed++;
+                System.out.println("board " + boardSeed + " accepted from (" + row + "," + column
+                        + ") needs a guess");
+            }
+        }
+        java.util.Arrays.sort(nanos);
+        System.out.printf("%d games of %dx%d with %d mines: %d boards found in %.3f s (%.1f candidates"
+                + " per game), %d fallbacks, %d not solved again%n", games, width, heigth, numberOfMines,
+                accepted, (System.nanoTime() - start) / 1e9, (double) attempts / games, games - accepted,
+                failed);
+        System.out.printf("search time per game: median %.1f ms, 99th percentile %.1f ms, max %.1f ms%n",
+                nanos[games / 2] / 1e6, nanos[Math.min(games - 1, games * 99 / 100)] / 1e6,
+                nanos[games - 1] / 1e6);
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * The class <b>MappedPlay</b> creates or reopens a game on a
+ * <b>MappedCellStore</b>, plays one move and saves it, timing each step.
+ * With a size, a new board is created; without, the saved game is
+ * reopened.
+ *
+ * It is not part of the game: it is compiled with the classes of the game,
+ * and run on its own.
+ */
+
+public class MappedPlay {
+
+    /**
+     * Plays one move. Parameters: file [width heigth mines]
+     *
+     * @param args
+     *            command line parameters
+     */
+    public static void main(String[] args) {
+        if (args.length != 1 && args.length != 4) {
+            System.out.println("Usage: MappedPlay file [width heigth mines]");
+            return;
+        }
+        try {
+            play(java.nio.file.Paths.get(args[0]), args);
+        } catch (IOException e) {
+            System.out.println("Cannot use the board file: " + e.getMessage());
+        }
+    }
+
+    private static void play(Path file, String[] args) throws IOException {
+        long start = System.nanoTime();
+        MappedCellStore store;
+        GameModel gameModel;
+        if (args.length == 4) {
+            int width = Integer.parseInt(args[1]);
+            int heigth = Integer.parseInt(args[2]);
+            store = MappedCellStore.create(file, width, heigth, Integer.parseInt(args[3]), System.nanoTime());
+            gameModel = new GameModel(width, heigth, store.getNumberOfMines(), store.getSeed(), store);
+        } else {
+            store = MappedCellStore.open(file);
+            gameModel = GameModel.open(store);
+        }
+        System.out.printf("%s %dx%d board ready in %.1f ms: %d steps, %d covered safe dots%n",
+                args.length == 4 ? "created" : "reopened", gameModel.getWidth(), gameModel.getHeigth(),
+                (System.nanoTime() - start) / 1e6, gameModel.getNumberOfSteps(), gameModel.getNumberCoveredSafe());
+
+        GameEngine gameEngine = new GameEngine(gameModel);
+        if (!gameEngine.isOver()) {
+            java.util.SplittableRandom random = new java.util.SplittableRandom();
+            int row;
+            int column;
+            do {
+                row = random.nextInt(gameModel.getHeigth());
+                column = random.nextInt(gameModel.getWidth());
+            } while (!gameModel.isCovered(row, column) && !gameModel.isFinished());
+            start = System.nanoTime();
+            GameEngine.Outcome outcome = gameEngine.reveal(row, column);
+            System.out.printf("(%d, %d): %s, %d dots uncovered in %.1f ms%n", row, column, outcome,
+                    gameEngine.getLastUncovered(), (System.nanoTime() - start) / 1e6);
+        }
+        start = System.nanoTime();
+        store.save(gameModel);
+        System.out.printf("saved in %.1f ms%n", (System.nanoTime() - start) / 1e6);
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * The class <b>SolverCheck</b> checks the win rates of the <b>Solver</b>:
+ * it plays seeded games of the three classic levels from a random first
+ * click with a safe opening, and compares the share of games solved with
+ * the lowest share expected. Here every selected dot also opens its safe
+ * neighboors, which makes boards easier than the classic rules: the solver
+ * clears about 86% of the beginner boards, 80% of the intermediate ones and
+ * 57% of the expert ones, and the thresholds sit about three standard
+ * deviations below those rates for 2000 games. A lower rate means the
+ * solver missed provable moves, and a lost game that it learned something
+ * wrong.
+ *
+ * It is not part of the game: it is compiled with the classes of the game,
+ * and run on its own. It exits with status 1 if a check fails.
+ */
+
+public class SolverCheck {
+
+    /**
+     * Runs the check. Parameters: [games [seed]]
+     *
+     * @param args
+     *            command line parameters
+     */
+    public static void main(String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 0L;
+        String[] names = {"beginner", "intermediate", "expert"};
+        int[][] levels = {{9, 9, 10}, {16, 16, 40}, {30, 16, 99}};
+        double[] expected = {0.83, 0.77, 0.54};
+        boolean passed = true;
+        for (int level = 0; level < levels.length; level++) {
+            int width = levels[level][0];
+            int heigth = levels[level][1];
+            GameModel gameModel = new GameModel(width, heigth, levels[level][2], seed);
+            GameEngine gameEngine = new GameEngine(gameModel);
+            gameEngine.setSafeOpening(true);
+            Solver solver = new Solver(gameModel);
+            int solved = 0;
+            int lost = 0;
+            long start = System.nanoTime();
+            for (int g = 0; g < games; g++) {
+                java.util.SplittableRandom random = new java.util.SplittableRandom(seed + g);
+                gameEngine.reset(random.nextLong());
+                Solver.Result result = solver.play(gameEngine, random.nextInt(heigth), random.nextInt(width));
+                if (result == Solver.Result.SOLVED) {
+                    solved++;
+                } else if (result == Solver.Result.LOST) {
+                    lost++;
+                }
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            double rate = (double) solved / games;
+            boolean ok = rate >= expected[level] && lost == 0;
+            passed &= ok;
+            System.out.printf("%-12s %dx%d/%d: solved %.4f (expected at least %.2f), lost %d, %.0f games/s %s%n",
+                    names[level], width, heigth, levels[level][2], rate, expected[level], lost,
+                    games / seconds, ok ? "ok" : "FAILED");
+        }
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+}